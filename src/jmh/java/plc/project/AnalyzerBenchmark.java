@@ -0,0 +1,95 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures analyzing a source with many methods one by one, and with the
+ * method bodies analyzed concurrently on a thread per available processor.
+ * Analyzing the same tree again replaces its bindings. Also measures
+ * analyzing the source again after editing the body of one method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+    @Param({"2000"})
+    public int methods;
+
+    private Ast.Source ast;
+    private ExecutorService executor;
+    private Analyzer analyzer;
+    private Ast.Source[] edits;
+    private int edit;
+
+    @Setup
+    public void setup() {
+        StringBuilder builder = new StringBuilder("LET limit: Integer = 10;\n");
+        for (int i = 0; i < methods; i++) {
+            builder.append("DEF f").append(i).append("(n").append(i).append(": Integer): Integer DO\n")
+                    .append("    LET total = 0;\n")
+                    .append("    WHILE total < n").append(i).append(" DO\n")
+                    .append("        IF total < limit DO total = total + 1; ELSE total = total + 2; END\n")
+                    .append("    END\n")
+                    .append("    RETURN total + ").append(i).append(";\n")
+                    .append("END\n");
+        }
+        builder.append("DEF main(): Integer DO RETURN f0(1); END\n");
+        ast = new Parser(new Lexer(builder.toString()).lex()).parseSource();
+        Ast.Source original = new Parser(new Lexer(builder.toString()).lex()).parseSource();
+        analyzer = new Analyzer(new plc.project.Scope(null));
+        analyzer.visit(original, Runnable::run);
+        edits = new Ast.Source[2];
+        for (int i = 0; i < edits.length; i++) {
+            List<Ast.Method> methods = new ArrayList<>(original.getMethods());
+            methods.set(0, new Parser(new Lexer("DEF f0(n0: Integer): Integer DO RETURN n0 + " + i + "; END").lex()).parseSource().getMethods().get(0));
+            edits[i] = new Ast.Source(original.getFields(), methods);
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Ast.Source sequential() {
+        new Analyzer(new plc.project.Scope(null)).visit(ast);
+        return ast;
+    }
+
+    @Benchmark
+    public Ast.Source parallel() {
+        new Analyzer(new plc.project.Scope(null)).visit(ast, executor);
+        return ast;
+    }
+
+    @Benchmark
+    public List<Ast.Method> incremental() {
+        Ast.Source edited = edits[edit ^= 1];
+        return analyzer.reanalyze(edited, Arrays.asList(edited.getMethods().get(0)));
+    }
+
+}
@@ -0,0 +1,69 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing into an object tree and into a {@link FlatAst}. Run with
+ * {@code -prof gc} to compare allocation, and see {@link #flatFootprint()}
+ * for the size of the retained arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatAstBenchmark {
+
+    @Param({"100", "1000"})
+    public int methods;
+
+    private TokenBuffer tokens;
+    private FlatAst flat;
+
+    @Setup
+    public void setup() {
+        tokens = new Lexer(Sources.generate(methods, methods)).lexBuffer();
+        flat = new Parser(tokens).parseSourceFlat();
+    }
+
+    @Benchmark
+    public Ast.Source tree() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public FlatAst flat() {
+        return new Parser(tokens).parseSourceFlat();
+    }
+
+    /**
+     * Decodes the whole tree, including every method body.
+     */
+    @Benchmark
+    public int decode() {
+        int statements = 0;
+        for (Ast.Method method : flat.toAst().getMethods()) {
+            statements += method.getStatements().size();
+        }
+        return statements;
+    }
+
+    @Benchmark
+    public long flatFootprint() {
+        return flat.getFootprint();
+    }
+
+}
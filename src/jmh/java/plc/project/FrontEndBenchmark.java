@@ -0,0 +1,59 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares compiling a small source with a fresh lexer and parser against the
+ * pooled {@link FrontEnd}. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm}, the bytes allocated per source; what remains for
+ * the pooled benchmark is the AST and decoded literals.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+
+    private String source;
+    private FrontEnd frontEnd;
+
+    @Setup
+    public void setup() {
+        source = Sources.generate(1, 1);
+        frontEnd = new FrontEnd();
+    }
+
+    @Benchmark
+    public Ast.Source fresh() {
+        return new Parser(new Lexer(source).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source freshBuffer() {
+        return new Parser(new Lexer(source).lexBuffer()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source pooled() {
+        return frontEnd.parseSource(source);
+    }
+
+    @Benchmark
+    public Ast.Source threadLocal() {
+        return FrontEnd.parse(source);
+    }
+
+}
@@ -0,0 +1,66 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures interpreting a loop over nested blocks which reads several locals,
+ * with the locals looked up by name and by the slots resolved by the {@link
+ * Analyzer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"100000"})
+    public int iterations;
+
+    private Ast.Source named;
+    private Ast.Source addressed;
+
+    @Setup
+    public void setup() {
+        String source = String.join("\n",
+                "DEF main(): Integer DO",
+                "    LET a = 0; LET b = 1; LET c = 2; LET d = 3;",
+                "    LET total = 0;",
+                "    LET i = 0;",
+                "    WHILE i < " + iterations + " DO",
+                "        IF TRUE DO",
+                "            IF TRUE DO total = total + a + b + c + d + i; END",
+                "        END",
+                "        i = i + 1;",
+                "    END",
+                "    RETURN total;",
+                "END");
+        named = new Parser(new Lexer(source).lex()).parseSource();
+        addressed = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new plc.project.Scope(null)).visit(addressed);
+    }
+
+    @Benchmark
+    public Object named() {
+        return new Interpreter(new plc.project.Scope(null)).visit(named).getValue();
+    }
+
+    @Benchmark
+    public Object addressed() {
+        return new Interpreter(new plc.project.Scope(null)).visit(addressed).getValue();
+    }
+
+}
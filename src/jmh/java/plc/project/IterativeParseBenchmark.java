@@ -0,0 +1,107 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of recursive and iterative parsing (see {@link
+ * Parser#setIterative(boolean)}) on typical sources and on deeply nested
+ * expressions. Only the iterative parser is run on the deepest input (see
+ * {@link Deep}), which overflows the stack when parsed recursively.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterativeParseBenchmark {
+
+    @Param({"1000"})
+    public int methods;
+
+    @Param({"1000"})
+    public int depth;
+
+    private TokenBuffer source;
+    private TokenBuffer nested;
+
+    @Setup
+    public void setup() {
+        source = new Lexer(Sources.generate(methods, methods)).lexBuffer();
+        nested = nest(depth);
+    }
+
+    private static TokenBuffer nest(int depth) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            builder.append("f(x + ");
+        }
+        builder.append("1");
+        for (int i = 0; i < depth; i++) {
+            builder.append(")");
+        }
+        return new Lexer(builder.toString()).lexBuffer();
+    }
+
+    @Benchmark
+    public Ast.Source recursiveSource() {
+        return new Parser(source).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source iterativeSource() {
+        Parser parser = new Parser(source);
+        parser.setIterative(true);
+        return parser.parseSource();
+    }
+
+    @Benchmark
+    public Ast.Expr recursiveNested() {
+        return new Parser(nested).parseExpression();
+    }
+
+    @Benchmark
+    public Ast.Expr iterativeNested() {
+        Parser parser = new Parser(nested);
+        parser.setIterative(true);
+        return parser.parseExpression();
+    }
+
+    @Benchmark
+    public Ast.Expr iterativeDeep(Deep deep) {
+        Parser parser = new Parser(deep.nested);
+        parser.setIterative(true);
+        return parser.parseExpression();
+    }
+
+    /**
+     * A nested expression too deep for the recursive parser.
+     */
+    @State(Scope.Benchmark)
+    public static class Deep {
+
+        @Param({"100000"})
+        public int deepDepth;
+
+        private TokenBuffer nested;
+
+        @Setup
+        public void setup() {
+            nested = nest(deepDepth);
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing a lexed source sequentially against {@link
+ * Parser#parseSourceParallel()}, which should scale with the parallelism of
+ * the common pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelParseBenchmark {
+
+    @Param({"1000", "10000"})
+    public int methods;
+
+    private List<Token> tokens;
+
+    @Setup
+    public void setup() {
+        tokens = new Lexer(Sources.generate(methods, methods)).lex();
+    }
+
+    @Benchmark
+    public Ast.Source sequential() {
+        return new Parser(tokens).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source parallel() {
+        return new Parser(tokens).parseSourceParallel();
+    }
+
+}
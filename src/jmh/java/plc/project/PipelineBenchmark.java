@@ -0,0 +1,61 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time to parse a source when lexing finishes first against
+ * lexing on another thread with {@link FrontEnd#parsePipelined(Lexer,
+ * java.util.concurrent.Executor)}. The pipeline only helps with at least two
+ * cores available.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"1000", "10000"})
+    public int methods;
+
+    private String source;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        source = Sources.generate(methods, methods);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public Ast.Source sequential() {
+        return new Parser(new Lexer(source).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source pipelined() {
+        return FrontEnd.parsePipelined(new Lexer(source), executor);
+    }
+
+}
@@ -0,0 +1,35 @@
+package plc.project;
+
+/**
+ * Generates synthetic but valid sources for the benchmarks.
+ */
+final class Sources {
+
+    private Sources() {}
+
+    /**
+     * Returns a source with the given number of fields and methods, where each
+     * method body mixes declarations, control flow, and nested expressions.
+     */
+    static String generate(int fields, int methods) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < fields; i++) {
+            builder.append("LET field").append(i).append(": Integer = ").append(i).append(";\n");
+        }
+        for (int i = 0; i < methods; i++) {
+            builder.append("DEF method").append(i).append("(x: Integer, y: Decimal): Integer DO\n")
+                    .append("    LET total = x * 2 + (x - 1) / 3;\n")
+                    .append("    IF total <= 10 AND x != 0 DO\n")
+                    .append("        print(\"small\\n\");\n")
+                    .append("    ELSE\n")
+                    .append("        total = total - 'a'.compare('b');\n")
+                    .append("    END\n")
+                    .append("    WHILE total > 0 DO total = total - 1; END\n")
+                    .append("    RETURN total + field0;\n")
+                    .append("END\n");
+        }
+        builder.append("DEF main(): Integer DO RETURN 0; END\n");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,61 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares lexing and parsing through a {@code List<Token>} against a {@link
+ * TokenBuffer}. Run with {@code -prof gc} to compare the bytes allocated per
+ * operation, which for the lex benchmarks is the footprint of the tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBufferBenchmark {
+
+    @Param({"100", "10000"})
+    public int methods;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Sources.generate(methods, methods);
+    }
+
+    @Benchmark
+    public List<Token> lexList() {
+        return new Lexer(source).lex();
+    }
+
+    @Benchmark
+    public TokenBuffer lexBuffer() {
+        return new Lexer(source).lexBuffer();
+    }
+
+    @Benchmark
+    public Ast.Source lexParseList() {
+        return new Parser(new Lexer(source).lex()).parseSource();
+    }
+
+    @Benchmark
+    public Ast.Source lexParseBuffer() {
+        return new Parser(new Lexer(source).lexBuffer()).parseSource();
+    }
+
+}
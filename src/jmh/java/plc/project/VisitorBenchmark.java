@@ -0,0 +1,193 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of visiting a deep expression tree through {@link
+ * Ast.Visitor#visit(Ast)}, which switches on {@link Ast#getKind()}, compared
+ * to the chain of {@code instanceof} checks it used before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({"16"})
+    public int depth;
+
+    private Ast.Expr tree;
+
+    @Setup
+    public void setup() {
+        tree = generate(depth, 0);
+    }
+
+    /**
+     * Creates a balanced tree of binary expressions with groups, accesses,
+     * functions and literals mixed in, so the call sites see every kind.
+     */
+    private static Ast.Expr generate(int depth, int index) {
+        if (depth == 0) {
+            switch (index % 3) {
+                case 0: return new Ast.Expr.Literal(BigInteger.valueOf(index));
+                case 1: return new Ast.Expr.Access(Optional.empty(), "x");
+                default: return new Ast.Expr.Function(Optional.empty(), "f", Arrays.asList());
+            }
+        }
+        Ast.Expr expr = new Ast.Expr.Binary("+", generate(depth - 1, 2 * index), generate(depth - 1, 2 * index + 1));
+        return depth % 3 == 0 ? new Ast.Expr.Group(expr) : expr;
+    }
+
+    @Benchmark
+    public int kind() {
+        return new Counter(false).visit(tree);
+    }
+
+    @Benchmark
+    public int instanceOf() {
+        return new Counter(true).visit(tree);
+    }
+
+    private static final class Counter implements Ast.Visitor<Integer> {
+
+        private final boolean chain;
+
+        private Counter(boolean chain) {
+            this.chain = chain;
+        }
+
+        @Override
+        public Integer visit(Ast ast) {
+            return chain ? dispatch(ast) : Ast.Visitor.super.visit(ast);
+        }
+
+        private Integer dispatch(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                return visit((Ast.Source) ast);
+            } else if (ast instanceof Ast.Field) {
+                return visit((Ast.Field) ast);
+            } else if (ast instanceof Ast.Method) {
+                return visit((Ast.Method) ast);
+            } else if (ast instanceof Ast.Stmt.Expression) {
+                return visit((Ast.Stmt.Expression) ast);
+            } else if (ast instanceof Ast.Stmt.Declaration) {
+                return visit((Ast.Stmt.Declaration) ast);
+            } else if (ast instanceof Ast.Stmt.Assignment) {
+                return visit((Ast.Stmt.Assignment) ast);
+            } else if (ast instanceof Ast.Stmt.If) {
+                return visit((Ast.Stmt.If) ast);
+            } else if (ast instanceof Ast.Stmt.For) {
+                return visit((Ast.Stmt.For) ast);
+            } else if (ast instanceof Ast.Stmt.While) {
+                return visit((Ast.Stmt.While) ast);
+            } else if (ast instanceof Ast.Stmt.Return) {
+                return visit((Ast.Stmt.Return) ast);
+            } else if (ast instanceof Ast.Expr.Literal) {
+                return visit((Ast.Expr.Literal) ast);
+            } else if (ast instanceof Ast.Expr.Group) {
+                return visit((Ast.Expr.Group) ast);
+            } else if (ast instanceof Ast.Expr.Binary) {
+                return visit((Ast.Expr.Binary) ast);
+            } else if (ast instanceof Ast.Expr.Access) {
+                return visit((Ast.Expr.Access) ast);
+            } else {
+                return visit((Ast.Expr.Function) ast);
+            }
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Expression ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Declaration ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Assignment ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.If ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.For ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.While ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Stmt.Return ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Group ast) {
+            return visit(ast.getExpression()) + 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Binary ast) {
+            return visit(ast.getLeft()) + visit(ast.getRight()) + 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Access ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expr.Function ast) {
+            return 1;
+        }
+
+    }
+
+}
@@ -4,7 +4,17 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 /**
  * See the specification for information about what the different visit
@@ -16,11 +26,40 @@ public final class Analyzer implements Ast.Visitor<Void> {
     private Ast.Method method;
     //private Environment.Type returnType;
 
+    /**
+     * The level and slot of each local variable in scope, where the level is
+     * the number of scopes the Interpreter has entered when it is defined (a
+     * method call, an if branch, or a loop iteration) and the slot is its
+     * index among the locals of that scope. Fields are not addressed.
+     */
+    private final Map<Environment.Variable, int[]> addresses = new IdentityHashMap<>();
+    private int level = 0;
+    private int slots = 0;
+
+    /**
+     * The global fields (by name) and functions (by name and arity, such as
+     * {@code f/1}) used by the body of each analyzed method, and the analyzed
+     * methods by name and arity.
+     */
+    private final Map<Ast.Method, Set<String>> graph = new IdentityHashMap<>();
+    private final Map<String, Ast.Method> methods = new LinkedHashMap<>();
+    private Set<String> dependencies;
+    private boolean twoPhase = false;
+
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
     }
 
+    /**
+     * Creates the context for analyzing a single method body, whose
+     * parameters are defined in a scope of its own.
+     */
+    private Analyzer(Scope global, Ast.Method ast) {
+        scope = new Scope(global);
+        method = ast;
+    }
+
     public Scope getScope() {
         return scope;
     }
@@ -38,6 +77,140 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Analyzes the source in two phases: the fields and method signatures are
+     * defined first, and then the method bodies are analyzed concurrently on
+     * the executor, each by its own Analyzer which only reads the global
+     * scope. Unlike {@link #visit(Ast.Source)}, methods may call methods
+     * defined after them. If any bodies fail, the error of the first one in
+     * the source is thrown with the errors of the others suppressed.
+     */
+    public Void visit(Ast.Source ast, Executor executor) {
+        for (Ast.Field field : ast.getFields()) {
+            visit(field);
+        }
+        for (Ast.Method method : ast.getMethods()) {
+            declare(method);
+        }
+        twoPhase = true;
+        List<Analyzer> contexts = new ArrayList<>();
+        List<FutureTask<Void>> tasks = new ArrayList<>();
+        for (Ast.Method method : ast.getMethods()) {
+            Analyzer context = new Analyzer(scope, method);
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                context.body(method, context.parameters(method));
+                return null;
+            });
+            contexts.add(context);
+            tasks.add(task);
+            executor.execute(task);
+        }
+        RuntimeException error = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                tasks.get(i).get();
+                graph.put(ast.getMethods().get(i), contexts.get(i).dependencies);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                if (error == null) {
+                    error = cause;
+                } else {
+                    error.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while analyzing methods", e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        Environment.Function main = scope.lookupFunction("main", 0);
+        requireAssignable(Environment.Type.INTEGER, main.getReturnType());
+        return null;
+    }
+
+    /**
+     * Returns the global fields (by name) and functions (by name and arity,
+     * such as {@code f/1}) used by the body of an analyzed method.
+     */
+    public Set<String> getDependencies(Ast.Method ast) {
+        if (!graph.containsKey(ast)) {
+            throw new IllegalStateException("method " + ast.getName() + " has not been analyzed");
+        }
+        return Collections.unmodifiableSet(graph.get(ast));
+    }
+
+    /**
+     * Analyzes a source which was analyzed by this Analyzer before and has
+     * since been edited by replacing, adding or removing the given methods.
+     * All signatures are defined before any body is checked, so this accepts
+     * the same programs as {@link #visit(Ast.Source, Executor)}, which must be
+     * how the source was first analyzed. The fields must be unchanged. Methods whose signature is unchanged keep
+     * their function, so bindings to it stay valid. The changed methods are
+     * checked again, along with the methods using a function whose signature
+     * changed or which was removed. The bindings of all other methods are
+     * kept. Methods which failed to be checked are checked again next time.
+     * Returns the methods which were checked, in source order.
+     */
+    public List<Ast.Method> reanalyze(Ast.Source ast, Collection<Ast.Method> changed) {
+        if (!twoPhase) {
+            throw new IllegalStateException("reanalyze requires a source analyzed by visit(Ast.Source, Executor)");
+        }
+        Set<Ast.Method> edited = Collections.newSetFromMap(new IdentityHashMap<>());
+        edited.addAll(changed);
+        Map<String, Ast.Method> current = new LinkedHashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            String key = method.getName() + "/" + method.getParameters().size();
+            current.put(key, method);
+            if (methods.get(key) != method) {
+                edited.add(method);
+            }
+        }
+        // Signatures
+        Set<String> signatures = new HashSet<>();
+        for (Map.Entry<String, Ast.Method> entry : methods.entrySet()) {
+            Ast.Method method = current.get(entry.getKey());
+            if (method == null || (edited.contains(method) && !isSameSignature(entry.getValue(), method))) {
+                scope.removeFunction(entry.getValue().getName(), entry.getValue().getParameters().size());
+                signatures.add(entry.getKey());
+            }
+            if (method != entry.getValue()) {
+                graph.remove(entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Ast.Method> entry : current.entrySet()) {
+            Ast.Method method = entry.getValue();
+            if (!methods.containsKey(entry.getKey()) || signatures.contains(entry.getKey())) {
+                declare(method);
+                signatures.add(entry.getKey());
+            }
+            else if (edited.contains(method)) {
+                method.setFunction(methods.get(entry.getKey()).getFunction());
+            }
+        }
+        methods.clear();
+        methods.putAll(current);
+        // Bodies, which are only added back to the graph once checked
+        List<Ast.Method> checked = new ArrayList<>();
+        for (Ast.Method method : ast.getMethods()) {
+            if (edited.contains(method) || !graph.containsKey(method) || !Collections.disjoint(graph.get(method), signatures)) {
+                checked.add(method);
+            }
+        }
+        for (Ast.Method method : checked) {
+            graph.remove(method);
+        }
+        for (Ast.Method method : checked) {
+            Analyzer context = new Analyzer(scope, method);
+            context.body(method, context.parameters(method));
+            graph.put(method, context.dependencies);
+        }
+        Environment.Function main = scope.lookupFunction("main", 0);
+        requireAssignable(Environment.Type.INTEGER, main.getReturnType());
+        return checked;
+    }
+
     @Override
     public Void visit(Ast.Field ast) {
         Environment.Type type = Environment.getType(ast.getTypeName());
@@ -52,23 +225,61 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Method ast) {
-        this.method = ast;
+        List<Environment.Variable> parameters = parameters(ast);
+        declare(ast);
+        body(ast, parameters);
+        graph.put(ast, dependencies);
+        return null;
+    }
+
+    /**
+     * Defines the parameters of a method in the current scope.
+     */
+    private List<Environment.Variable> parameters(Ast.Method ast) {
+        List<Environment.Variable> parameters = new ArrayList<>();
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            Environment.Type type = Environment.getType(ast.getParameterTypeNames().get(i));
+            parameters.add(scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), type, Environment.NIL));
+        }
+        return parameters;
+    }
+
+    /**
+     * Defines and sets the function of a method from its signature.
+     */
+    private void declare(Ast.Method ast) {
         // Return Type
         Environment.Type returnType = Environment.Type.NIL;
         if (ast.getReturnTypeName().isPresent()) {
             returnType = Environment.getType(ast.getReturnTypeName().get());
         }
-        // Parameters
+        // Parameter Types
         List<Environment.Type> parameterTypes = new ArrayList<>();
-        for (int i = 0; i < ast.getParameters().size(); i++) {
-            Environment.Type type = Environment.getType(ast.getParameterTypeNames().get(i));
-            scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), type, Environment.NIL);
-            parameterTypes.add(type);
+        for (String typeName : ast.getParameterTypeNames()) {
+            parameterTypes.add(Environment.getType(typeName));
         }
         // Define & Set Function
         scope.defineFunction(ast.getName(), ast.getName(), parameterTypes,
                 returnType, args -> Environment.NIL);
         ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameters().size()));
+        methods.put(ast.getName() + "/" + ast.getParameters().size(), ast);
+    }
+
+    private static boolean isSameSignature(Ast.Method previous, Ast.Method ast) {
+        return previous.getParameterTypeNames().equals(ast.getParameterTypeNames()) &&
+                previous.getReturnTypeName().equals(ast.getReturnTypeName());
+    }
+
+    /**
+     * Analyzes the statements of a method whose parameters have been defined.
+     */
+    private void body(Ast.Method ast, List<Environment.Variable> parameters) {
+        this.method = ast;
+        this.dependencies = new HashSet<>();
+        int slots = enter();
+        for (Environment.Variable parameter : parameters) {
+            define(parameter);
+        }
         // Statements
         try {
             scope = new Scope(scope);
@@ -78,8 +289,12 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
         finally {
             scope = scope.getParent();
+            exit(slots);
+            // Parameters stay defined in this scope, but are not locals of later methods
+            for (Environment.Variable parameter : parameters) {
+                addresses.remove(parameter);
+            }
         }
-        return null;
     }
 
     @Override
@@ -115,6 +330,9 @@ public final class Analyzer implements Ast.Visitor<Void> {
         // Declaration
         scope.defineVariable(ast.getName(), ast.getName(), type, Environment.NIL);
         ast.setVariable(scope.lookupVariable(ast.getName()));
+        if (level > 0) {
+            ast.setSlot(define(ast.getVariable()));
+        }
         return null;
     }
 
@@ -141,6 +359,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             throw new RuntimeException("Then statements list is empty");
         }
         // Then Statements
+        int slots = enter();
         try {
             scope = new Scope(scope);
             for (Ast.Stmt stmt : ast.getThenStatements()) {
@@ -149,8 +368,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
         finally {
             scope = scope.getParent();
+            exit(slots);
         }
         // Else Statements
+        slots = enter();
         try {
             scope = new Scope(scope);
             for (Ast.Stmt stmt : ast.getElseStatements()) {
@@ -159,6 +380,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
         finally {
             scope = scope.getParent();
+            exit(slots);
         }
         return null;
     }
@@ -172,15 +394,17 @@ public final class Analyzer implements Ast.Visitor<Void> {
             throw new RuntimeException("For statement list cannot be empty.");
         }
         // Visit statements
+        int slots = enter();
         try {
             scope = new Scope(scope);
-            scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL);
+            define(scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL));
             for (Ast.Stmt stmt : ast.getStatements()) {
                 visit(stmt);
             }
         }
         finally {
             scope = scope.getParent();
+            exit(slots);
         }
         return null;
     }
@@ -189,6 +413,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Void visit(Ast.Stmt.While ast) {
         visit(ast.getCondition());
         requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
+        int slots = enter();
         try {
             scope = new Scope(scope);
             for (Ast.Stmt stmt : ast.getStatements()) {
@@ -197,6 +422,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
         finally {
             scope = scope.getParent();
+            exit(slots);
         }
         return null;
     }
@@ -320,6 +546,13 @@ public final class Analyzer implements Ast.Visitor<Void> {
         // Variable
         else {
             ast.setVariable(scope.lookupVariable(ast.getName()));
+            int[] address = addresses.get(ast.getVariable());
+            if (address != null) {
+                ast.setAddress(level - address[0], address[1]);
+            }
+            else if (dependencies != null) {
+                dependencies.add(ast.getName());
+            }
         }
         return null;
     }
@@ -340,6 +573,9 @@ public final class Analyzer implements Ast.Visitor<Void> {
         // Regular function
         else {
             Environment.Function func = scope.lookupFunction(ast.getName(), ast.getArguments().size());
+            if (dependencies != null) {
+                dependencies.add(ast.getName() + "/" + ast.getArguments().size());
+            }
             // Verify Arguments
             for (int i = 0; i < ast.getArguments().size(); i++) {
                 visit(ast.getArguments().get(i));
@@ -350,6 +586,30 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Enters the scope of a method call, if branch, or loop iteration,
+     * returning the number of slots used by the enclosing one.
+     */
+    private int enter() {
+        int slots = this.slots;
+        this.level++;
+        this.slots = 0;
+        return slots;
+    }
+
+    private void exit(int slots) {
+        this.level--;
+        this.slots = slots;
+    }
+
+    /**
+     * Assigns a local variable the next slot of the current scope.
+     */
+    private int define(Environment.Variable variable) {
+        addresses.put(variable, new int[] {level, slots});
+        return slots++;
+    }
+
     public static void requireAssignable(Environment.Type target, Environment.Type type) {
         if (target.equals(Environment.Type.ANY)) {
             return;
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -11,12 +12,68 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * The class of a node, so code which handles every kind of node can use a
+     * single switch instead of a chain of type checks.
+     */
+    public enum Kind {
+        SOURCE,
+        FIELD,
+        METHOD,
+        EXPRESSION,
+        DECLARATION,
+        ASSIGNMENT,
+        IF,
+        FOR,
+        WHILE,
+        RETURN,
+        LITERAL,
+        GROUP,
+        BINARY,
+        ACCESS,
+        FUNCTION
+    }
+
+    private final Kind kind;
+    private int hashCode;
+
+    Ast(Kind kind) {
+        this.kind = kind;
+    }
+
+    public final Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns a hash of the structure of the node, which is computed once.
+     * Types and bindings set by the {@link Analyzer} are not included, so the
+     * hash does not change during analysis and equal nodes have equal hashes.
+     * Like {@link #equals(Object)}, hashing a tree produced by
+     * {@link Parser#parseSourceLazy(boolean)} parses the bodies of its methods.
+     */
+    @Override
+    public final int hashCode() {
+        int hashCode = this.hashCode;
+        if (hashCode == 0) {
+            hashCode = structuralHashCode();
+            if (hashCode == 0) {
+                hashCode = 1;
+            }
+            this.hashCode = hashCode;
+        }
+        return hashCode;
+    }
+
+    abstract int structuralHashCode();
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
         private final List<Method> methods;
 
         public Source(List<Field> fields, List<Method> methods) {
+            super(Kind.SOURCE);
             this.fields = fields;
             this.methods = methods;
         }
@@ -36,6 +93,11 @@ public abstract class Ast {
                     methods.equals(((Source) obj).methods);
         }
 
+        @Override
+        int structuralHashCode() {
+            return Objects.hash("Source", fields, methods);
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -58,6 +120,7 @@ public abstract class Ast {
         }
 
         public Field(String name, String typeName, Optional<Expr> value) {
+            super(Kind.FIELD);
             this.name = name;
             this.typeName = typeName;
             this.value = value;
@@ -95,6 +158,11 @@ public abstract class Ast {
                     Objects.equals(variable, ((Field) obj).variable);
         }
 
+        @Override
+        int structuralHashCode() {
+            return Objects.hash("Field", name, typeName, value);
+        }
+
         @Override
         public String toString() {
             return "Field{" +
@@ -113,7 +181,8 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Stmt> statements;
+        private volatile List<Stmt> statements;
+        private Supplier<List<Stmt>> body;
         private Environment.Function function = null;
 
         public Method(String name, List<String> parameters, List<Stmt> statements) {
@@ -124,6 +193,7 @@ public abstract class Ast {
         }
 
         public Method(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, List<Stmt> statements) {
+            super(Kind.METHOD);
             this.name = name;
             this.parameters = parameters;
             this.parameterTypeNames = parameterTypeNames;
@@ -131,6 +201,16 @@ public abstract class Ast {
             this.statements = statements;
         }
 
+        /**
+         * Creates a method whose statements are only produced by the body
+         * supplier the first time {@link #getStatements()} is called, which is
+         * used by {@link Parser#parseSourceLazy(boolean)}.
+         */
+        public Method(String name, List<String> parameters, List<String> parameterTypeNames, Optional<String> returnTypeName, Supplier<List<Stmt>> body) {
+            this(name, parameters, parameterTypeNames, returnTypeName, (List<Stmt>) null);
+            this.body = body;
+        }
+
         public String getName() {
             return name;
         }
@@ -148,9 +228,27 @@ public abstract class Ast {
         }
 
         public List<Stmt> getStatements() {
+            List<Stmt> statements = this.statements;
+            if (statements == null) {
+                synchronized (this) {
+                    if (this.statements == null) {
+                        this.statements = body.get();
+                        body = null;
+                    }
+                    statements = this.statements;
+                }
+            }
             return statements;
         }
 
+        /**
+         * Returns true if the statements have been produced, which is always
+         * the case unless the method was created with a body supplier.
+         */
+        public boolean hasStatements() {
+            return statements != null;
+        }
+
         public Environment.Function getFunction() {
             if (function == null) {
                 throw new IllegalStateException("function is uninitialized");
@@ -162,6 +260,14 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns true if the method has been analyzed, in which case its
+         * parameters and locals are addressed by slot.
+         */
+        public boolean hasFunction() {
+            return function != null;
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Method &&
@@ -169,10 +275,22 @@ public abstract class Ast {
                     parameters.equals(((Method) obj).parameters) &&
                     parameterTypeNames.equals(((Method) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Method) obj).returnTypeName) &&
-                    statements.equals(((Method) obj).statements) &&
+                    getStatements().equals(((Method) obj).getStatements()) &&
                     Objects.equals(function, ((Method) obj).function);
         }
 
+        /**
+         * Hashes the statements, which parses a lazy body and throws its
+         * {@link ParseException} if it is invalid. A hash of the unparsed
+         * tokens would differ from that of an equal method built from
+         * statements, so sources meant to stay lazy should be keyed by their
+         * text instead (see {@link CompilationCache}).
+         */
+        @Override
+        int structuralHashCode() {
+            return Objects.hash("Method", name, parameters, parameterTypeNames, returnTypeName, getStatements());
+        }
+
         @Override
         public String toString() {
             return "Method{" +
@@ -180,7 +298,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + getStatements() +
                     ", function=" + function +
                     '}';
         }
@@ -189,11 +307,16 @@ public abstract class Ast {
 
     public static abstract class Stmt extends Ast {
 
+        Stmt(Kind kind) {
+            super(kind);
+        }
+
         public static final class Expression extends Stmt {
 
             private final Expr expression;
 
             public Expression(Expr expression) {
+                super(Kind.EXPRESSION);
                 this.expression = expression;
             }
 
@@ -207,6 +330,11 @@ public abstract class Ast {
                         expression.equals(((Expression) obj).expression);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Expression", expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Expression{" +
@@ -222,12 +350,14 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private final Optional<Expr> value;
             private Environment.Variable variable;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Expr> value) {
                 this(name, Optional.empty(), value);
             }
 
             public Declaration(String name, Optional<String> typeName, Optional<Expr> value) {
+                super(Kind.DECLARATION);
                 this.name = name;
                 this.typeName = typeName;
                 this.value = value;
@@ -256,6 +386,25 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns true if the Analyzer has assigned the variable a slot in
+             * the scope it is declared in.
+             */
+            public boolean hasSlot() {
+                return slot >= 0;
+            }
+
+            public int getSlot() {
+                if (slot < 0) {
+                    throw new IllegalStateException("slot is uninitialized");
+                }
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -265,6 +414,11 @@ public abstract class Ast {
                         Objects.equals(variable, ((Declaration) obj).variable);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Declaration", name, typeName, value);
+            }
+
             @Override
             public String toString() {
                 return "Declaration{" +
@@ -283,6 +437,7 @@ public abstract class Ast {
             private final Expr value;
 
             public Assignment(Expr receiver, Expr value) {
+                super(Kind.ASSIGNMENT);
                 this.receiver = receiver;
                 this.value = value;
             }
@@ -302,6 +457,11 @@ public abstract class Ast {
                         value.equals(((Assignment) obj).value);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Assignment", receiver, value);
+            }
+
             @Override
             public final String toString() {
                 return "Ast.Stmt.Assignment{" +
@@ -320,6 +480,7 @@ public abstract class Ast {
 
 
             public If(Expr condition, List<Stmt> thenStatements, List<Stmt> elseStatements) {
+                super(Kind.IF);
                 this.condition = condition;
                 this.thenStatements = thenStatements;
                 this.elseStatements = elseStatements;
@@ -345,6 +506,11 @@ public abstract class Ast {
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("If", condition, thenStatements, elseStatements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.If{" +
@@ -363,6 +529,7 @@ public abstract class Ast {
             private final List<Stmt> statements;
 
             public For(String name, Expr value, List<Stmt> statements) {
+                super(Kind.FOR);
                 this.name = name;
                 this.value = value;
                 this.statements = statements;
@@ -388,6 +555,11 @@ public abstract class Ast {
                         statements.equals(((For) obj).statements);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("For", name, value, statements);
+            }
+
             @Override
             public String toString() {
                 return "For{" +
@@ -405,6 +577,7 @@ public abstract class Ast {
             private final List<Stmt> statements;
 
             public While(Expr condition, List<Stmt> statements) {
+                super(Kind.WHILE);
                 this.condition = condition;
                 this.statements = statements;
             }
@@ -424,6 +597,11 @@ public abstract class Ast {
                         statements.equals(((While) obj).statements);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("While", condition, statements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.While{" +
@@ -439,6 +617,7 @@ public abstract class Ast {
             private final Expr value;
 
             public Return(Expr value) {
+                super(Kind.RETURN);
                 this.value = value;
             }
 
@@ -452,6 +631,11 @@ public abstract class Ast {
                         value.equals(((Return) obj).value);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Return", value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Stmt.Return{" +
@@ -465,6 +649,10 @@ public abstract class Ast {
 
     public static abstract class Expr extends Ast {
 
+        Expr(Kind kind) {
+            super(kind);
+        }
+
         public abstract Environment.Type getType();
 
         public static final class Literal extends Expr {
@@ -473,6 +661,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Literal(Object literal) {
+                super(Kind.LITERAL);
                 this.literal = literal;
             }
 
@@ -499,6 +688,11 @@ public abstract class Ast {
                         Objects.equals(type, ((Literal) obj).type);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Literal", literal);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Literal{" +
@@ -515,6 +709,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Group(Expr expression) {
+                super(Kind.GROUP);
                 this.expression = expression;
             }
 
@@ -540,6 +735,11 @@ public abstract class Ast {
                         Objects.equals(type, ((Group) obj).type);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Group", expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Group{" +
@@ -558,6 +758,7 @@ public abstract class Ast {
             private Environment.Type type = null;
 
             public Binary(String operator, Expr left, Expr right) {
+                super(Kind.BINARY);
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
@@ -596,6 +797,11 @@ public abstract class Ast {
                         Objects.equals(type, ((Binary) obj).type);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Binary", operator, left, right);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Binary{" +
@@ -613,8 +819,11 @@ public abstract class Ast {
             private final Optional<Expr> receiver;
             private final String name;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
 
             public Access(Optional<Expr> receiver, String name) {
+                super(Kind.ACCESS);
                 this.receiver = receiver;
                 this.name = name;
             }
@@ -638,6 +847,34 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns true if the Analyzer has resolved the access to a local
+             * variable, which is found {@link #getDepth()} scopes up from the
+             * access in slot {@link #getSlot()}. Fields are not addressed.
+             */
+            public boolean hasAddress() {
+                return slot >= 0;
+            }
+
+            public int getDepth() {
+                if (slot < 0) {
+                    throw new IllegalStateException("address is uninitialized");
+                }
+                return depth;
+            }
+
+            public int getSlot() {
+                if (slot < 0) {
+                    throw new IllegalStateException("address is uninitialized");
+                }
+                return slot;
+            }
+
+            public void setAddress(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -651,6 +888,11 @@ public abstract class Ast {
                         Objects.equals(variable, ((Access) obj).variable);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Access", receiver, name);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Access{" +
@@ -670,6 +912,7 @@ public abstract class Ast {
             private Environment.Function function = null;
 
             public Function(Optional<Expr> receiver, String name, List<Expr> arguments) {
+                super(Kind.FUNCTION);
                 this.receiver = receiver;
                 this.name = name;
                 this.arguments = arguments;
@@ -712,6 +955,11 @@ public abstract class Ast {
                         Objects.equals(function, ((Function) obj).function);
             }
 
+            @Override
+            int structuralHashCode() {
+                return Objects.hash("Function", receiver, name, arguments);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expr.Function{" +
@@ -729,38 +977,23 @@ public abstract class Ast {
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Source) {
-                return visit((Source) ast);
-            } else if (ast instanceof Field) {
-                return visit((Field) ast);
-            } else if (ast instanceof Method) {
-                return visit((Method) ast);
-            } else if (ast instanceof Stmt.Expression) {
-                return visit((Stmt.Expression) ast);
-            } else if (ast instanceof Stmt.Declaration) {
-                return visit((Stmt.Declaration) ast);
-            } else if (ast instanceof Stmt.Assignment) {
-                return visit((Stmt.Assignment) ast);
-            } else if (ast instanceof Stmt.If) {
-                return visit((Stmt.If) ast);
-            } else if (ast instanceof Stmt.For) {
-                return visit((Stmt.For) ast);
-            } else if (ast instanceof Stmt.While) {
-                return visit((Stmt.While) ast);
-            } else if (ast instanceof Stmt.Return) {
-                return visit((Stmt.Return) ast);
-            } else if (ast instanceof Expr.Literal) {
-                return visit((Expr.Literal) ast);
-            } else if (ast instanceof Expr.Group) {
-                return visit((Expr.Group) ast);
-            } else if (ast instanceof Expr.Binary) {
-                return visit((Expr.Binary) ast);
-            } else if (ast instanceof Expr.Access) {
-                return visit((Expr.Access) ast);
-            } else if (ast instanceof Expr.Function) {
-                return visit((Expr.Function) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            switch (ast.getKind()) {
+                case SOURCE: return visit((Source) ast);
+                case FIELD: return visit((Field) ast);
+                case METHOD: return visit((Method) ast);
+                case EXPRESSION: return visit((Stmt.Expression) ast);
+                case DECLARATION: return visit((Stmt.Declaration) ast);
+                case ASSIGNMENT: return visit((Stmt.Assignment) ast);
+                case IF: return visit((Stmt.If) ast);
+                case FOR: return visit((Stmt.For) ast);
+                case WHILE: return visit((Stmt.While) ast);
+                case RETURN: return visit((Stmt.Return) ast);
+                case LITERAL: return visit((Expr.Literal) ast);
+                case GROUP: return visit((Expr.Group) ast);
+                case BINARY: return visit((Expr.Binary) ast);
+                case ACCESS: return visit((Expr.Access) ast);
+                case FUNCTION: return visit((Expr.Function) ast);
+                default: throw new AssertionError("Unimplemented AST kind: " + ast.getKind() + ".");
             }
         }
 
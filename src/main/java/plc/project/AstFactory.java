@@ -0,0 +1,119 @@
+package plc.project;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates expression nodes which are shared between all structurally equal
+ * occurrences, used by a parser through {@link Parser#setFactory(AstFactory)}.
+ *
+ * Only literals, and groups and binary expressions made of shared nodes, are
+ * shared, since analyzing them gives the same type wherever they appear.
+ * Accesses and function calls are resolved in the scope they appear in and
+ * are always created new, as are the expressions containing them. Literal
+ * values are kept in a constant pool so each distinct value is stored once.
+ *
+ * A factory is safe to use from many parsers at once.
+ */
+public final class AstFactory {
+
+    private final Ast.Expr.Literal nil = new Ast.Expr.Literal(null);
+    private final ConcurrentMap<Object, Object> constants = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Key, Ast.Expr> nodes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pooled value equal to the given one, which is the value
+     * itself if it is not pooled yet.
+     */
+    public Object constant(Object value) {
+        return value == null ? null : constants.computeIfAbsent(value, v -> v);
+    }
+
+    public Ast.Expr.Literal literal(Object value) {
+        if (value == null) {
+            return nil;
+        }
+        Object constant = constant(value);
+        return (Ast.Expr.Literal) nodes.computeIfAbsent(new Key("", constant, null, null), key -> new Ast.Expr.Literal(constant));
+    }
+
+    public Ast.Expr.Group group(Ast.Expr expression) {
+        if (!isShared(expression)) {
+            return new Ast.Expr.Group(expression);
+        }
+        return (Ast.Expr.Group) nodes.computeIfAbsent(new Key("(", null, expression, null), key -> new Ast.Expr.Group(expression));
+    }
+
+    public Ast.Expr.Binary binary(String operator, Ast.Expr left, Ast.Expr right) {
+        if (!isShared(left) || !isShared(right)) {
+            return new Ast.Expr.Binary(operator, left, right);
+        }
+        return (Ast.Expr.Binary) nodes.computeIfAbsent(new Key(operator, null, left, right), key -> new Ast.Expr.Binary(operator, left, right));
+    }
+
+    /**
+     * Returns the number of distinct shared nodes created so far.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns true if the node was created by this factory and is shared.
+     */
+    public boolean isShared(Ast.Expr expr) {
+        if (expr == nil) {
+            return true;
+        }
+        else if (expr instanceof Ast.Expr.Literal) {
+            Object literal = ((Ast.Expr.Literal) expr).getLiteral();
+            return literal != null && nodes.get(new Key("", literal, null, null)) == expr;
+        }
+        else if (expr instanceof Ast.Expr.Group) {
+            return nodes.get(new Key("(", null, ((Ast.Expr.Group) expr).getExpression(), null)) == expr;
+        }
+        else if (expr instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+            return nodes.get(new Key(binary.getOperator(), null, binary.getLeft(), binary.getRight())) == expr;
+        }
+        return false;
+    }
+
+    /**
+     * Identifies a shared node by its operator (empty for literals and an
+     * opening parenthesis for groups), its literal value, and the identity of
+     * its children, which are already shared. Children are compared by
+     * identity since their equality changes once they are analyzed.
+     */
+    private static final class Key {
+
+        private final String operator;
+        private final Object value;
+        private final Ast.Expr left;
+        private final Ast.Expr right;
+
+        private Key(String operator, Object value, Ast.Expr left, Ast.Expr right) {
+            this.operator = operator;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key &&
+                    operator.equals(((Key) obj).operator) &&
+                    Objects.equals(value, ((Key) obj).value) &&
+                    left == ((Key) obj).left &&
+                    right == ((Key) obj).right;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operator, value, System.identityHashCode(left), System.identityHashCode(right));
+        }
+
+    }
+
+}
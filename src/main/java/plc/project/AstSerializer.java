@@ -0,0 +1,698 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes an analyzed {@link Ast.Source} in a compact binary format and loads
+ * it back without lexing, parsing or analyzing the source again.
+ *
+ * The resolved types of expressions and the variables and functions set by
+ * the {@link Analyzer} are kept, including which nodes share the same
+ * binding. Types are stored by name and looked up in the {@link Environment}
+ * when loading, and bindings to fields and methods of a type are looked up in
+ * that type, so they are the same objects the analyzer would use. Bindings
+ * which were not set (such as on trees which were never analyzed) stay unset.
+ * The slots of local variables are kept as well.
+ *
+ * The header holds the format version, the {@link Environment#getTypeVersion()
+ * type version}, a SHA-256 hash of the source text, and a CRC-32C checksum of
+ * the rest of the data. Loading throws an {@link IOException} if any of these
+ * do not match, in which case the source should be compiled again.
+ */
+public final class AstSerializer {
+
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x504C4341;
+    private static final int HEADER = 4 + 2 + 4 + 32 + 4 + 4;
+
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INTEGER = 3;
+    private static final int DECIMAL = 4;
+    private static final int CHARACTER = 5;
+    private static final int STRING = 6;
+
+    private static final int DEFINED = 0;
+    private static final int MEMBER = 1;
+
+    private AstSerializer() {}
+
+    public static byte[] serialize(CharSequence source, Ast.Source ast) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            write(source, ast, bytes);
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the tree of the given source to the stream. Method bodies are
+     * produced if they have not been yet.
+     */
+    public static void write(CharSequence source, Ast.Source ast, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.source(ast);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writer.tables(new DataOutputStream(payload));
+        writer.tree.writeTo(payload);
+        byte[] data = payload.toByteArray();
+        CRC32C checksum = new CRC32C();
+        checksum.update(data);
+        DataOutputStream output = new DataOutputStream(out);
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(Environment.getTypeVersion());
+        output.write(hash(source));
+        output.writeInt(data.length);
+        output.writeInt((int) checksum.getValue());
+        output.write(data);
+        output.flush();
+    }
+
+    public static Ast.Source read(CharSequence source, InputStream in) throws IOException {
+        return deserialize(source, in.readAllBytes());
+    }
+
+    /**
+     * Loads the tree written for the given source, throwing an {@link
+     * IOException} if the data is for a different source, format version or
+     * type version, or is corrupted.
+     */
+    public static Ast.Source deserialize(CharSequence source, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (bytes.length < HEADER || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a serialized source.");
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported format version " + version + ".");
+            }
+            if (buffer.getInt() != Environment.getTypeVersion()) {
+                throw new IOException("Serialized for a different type version.");
+            }
+            byte[] hash = new byte[32];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, hash(source))) {
+                throw new IOException("Serialized for a different source.");
+            }
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length != buffer.remaining()) {
+                throw new IOException("Expected " + length + " bytes of data, received " + buffer.remaining() + ".");
+            }
+            CRC32C checksum = new CRC32C();
+            checksum.update(bytes, HEADER, length);
+            if ((int) checksum.getValue() != expected) {
+                throw new IOException("Checksum mismatch.");
+            }
+            Reader reader = new Reader(buffer);
+            reader.tables();
+            Ast.Source ast = reader.source();
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data after the source.");
+            }
+            return ast;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Malformed data.", e);
+        }
+    }
+
+    private static byte[] hash(CharSequence source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Returns the value of the getter, or null if it is uninitialized.
+     */
+    private static <T> T binding(Supplier<T> getter) {
+        try {
+            return getter.get();
+        }
+        catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static final class Writer {
+
+        private final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(tree);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final Map<Environment.Type, Integer> types = new IdentityHashMap<>();
+        private final Map<Environment.Variable, Integer> variables = new IdentityHashMap<>();
+        private final Map<Environment.Function, Integer> functions = new IdentityHashMap<>();
+        private final List<int[]> variableEntries = new ArrayList<>();
+        private final List<int[]> functionEntries = new ArrayList<>();
+
+        void tables(DataOutputStream out) throws IOException {
+            String[] strings = new String[this.strings.size()];
+            this.strings.forEach((string, index) -> strings[index] = string);
+            writeInt(out, strings.length);
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeInt(out, bytes.length);
+                out.write(bytes);
+            }
+            int[] types = new int[this.types.size()];
+            this.types.forEach((type, index) -> types[index] = this.strings.get(type.getName()));
+            writeInts(out, types);
+            writeInt(out, variableEntries.size());
+            for (int[] entry : variableEntries) {
+                writeInts(out, entry);
+            }
+            writeInt(out, functionEntries.size());
+            for (int[] entry : functionEntries) {
+                writeInts(out, entry);
+            }
+        }
+
+        void source(Ast.Source ast) throws IOException {
+            writeInt(out, ast.getFields().size());
+            for (Ast.Field field : ast.getFields()) {
+                writeInt(out, string(field.getName()));
+                writeInt(out, string(field.getTypeName()));
+                expr(field.getValue());
+                writeInt(out, variable(binding(field::getVariable), null));
+            }
+            writeInt(out, ast.getMethods().size());
+            for (Ast.Method method : ast.getMethods()) {
+                writeInt(out, string(method.getName()));
+                writeInt(out, method.getParameters().size());
+                for (int i = 0; i < method.getParameters().size(); i++) {
+                    writeInt(out, string(method.getParameters().get(i)));
+                    writeInt(out, string(method.getParameterTypeNames().get(i)));
+                }
+                writeInt(out, method.getReturnTypeName().isPresent() ? string(method.getReturnTypeName().get()) + 1 : 0);
+                writeInt(out, function(binding(method::getFunction), null, 0));
+                statements(method.getStatements());
+            }
+        }
+
+        private void statements(List<Ast.Stmt> statements) throws IOException {
+            writeInt(out, statements.size());
+            for (Ast.Stmt stmt : statements) {
+                stmt(stmt);
+            }
+        }
+
+        private void stmt(Ast.Stmt stmt) throws IOException {
+            if (stmt instanceof Ast.Stmt.Expression) {
+                out.writeByte(FlatAst.EXPRESSION);
+                expr(((Ast.Stmt.Expression) stmt).getExpression());
+            }
+            else if (stmt instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration ast = (Ast.Stmt.Declaration) stmt;
+                out.writeByte(FlatAst.DECLARATION);
+                writeInt(out, string(ast.getName()));
+                writeInt(out, ast.getTypeName().isPresent() ? string(ast.getTypeName().get()) + 1 : 0);
+                expr(ast.getValue());
+                writeInt(out, variable(binding(ast::getVariable), null));
+                writeInt(out, ast.hasSlot() ? ast.getSlot() + 1 : 0);
+            }
+            else if (stmt instanceof Ast.Stmt.Assignment) {
+                out.writeByte(FlatAst.ASSIGNMENT);
+                expr(((Ast.Stmt.Assignment) stmt).getReceiver());
+                expr(((Ast.Stmt.Assignment) stmt).getValue());
+            }
+            else if (stmt instanceof Ast.Stmt.If) {
+                Ast.Stmt.If ast = (Ast.Stmt.If) stmt;
+                out.writeByte(FlatAst.IF);
+                expr(ast.getCondition());
+                statements(ast.getThenStatements());
+                statements(ast.getElseStatements());
+            }
+            else if (stmt instanceof Ast.Stmt.For) {
+                Ast.Stmt.For ast = (Ast.Stmt.For) stmt;
+                out.writeByte(FlatAst.FOR);
+                writeInt(out, string(ast.getName()));
+                expr(ast.getValue());
+                statements(ast.getStatements());
+            }
+            else if (stmt instanceof Ast.Stmt.While) {
+                out.writeByte(FlatAst.WHILE);
+                expr(((Ast.Stmt.While) stmt).getCondition());
+                statements(((Ast.Stmt.While) stmt).getStatements());
+            }
+            else {
+                out.writeByte(FlatAst.RETURN);
+                expr(((Ast.Stmt.Return) stmt).getValue());
+            }
+        }
+
+        private void expr(Optional<Ast.Expr> expr) throws IOException {
+            out.writeBoolean(expr.isPresent());
+            if (expr.isPresent()) {
+                expr(expr.get());
+            }
+        }
+
+        private void expr(Ast.Expr expr) throws IOException {
+            if (expr instanceof Ast.Expr.Literal) {
+                out.writeByte(FlatAst.LITERAL);
+                literal(((Ast.Expr.Literal) expr).getLiteral());
+                writeInt(out, type(binding(expr::getType)));
+            }
+            else if (expr instanceof Ast.Expr.Group) {
+                out.writeByte(FlatAst.GROUP);
+                expr(((Ast.Expr.Group) expr).getExpression());
+                writeInt(out, type(binding(expr::getType)));
+            }
+            else if (expr instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary ast = (Ast.Expr.Binary) expr;
+                out.writeByte(FlatAst.BINARY);
+                writeInt(out, string(ast.getOperator()));
+                expr(ast.getLeft());
+                expr(ast.getRight());
+                writeInt(out, type(binding(expr::getType)));
+            }
+            else if (expr instanceof Ast.Expr.Access) {
+                Ast.Expr.Access ast = (Ast.Expr.Access) expr;
+                out.writeByte(FlatAst.ACCESS);
+                expr(ast.getReceiver());
+                writeInt(out, string(ast.getName()));
+                Environment.Type owner = ast.getReceiver().isPresent() ? binding(ast.getReceiver().get()::getType) : null;
+                writeInt(out, variable(binding(ast::getVariable), owner));
+                writeInt(out, ast.hasAddress() ? ast.getSlot() + 1 : 0);
+                if (ast.hasAddress()) {
+                    writeInt(out, ast.getDepth());
+                }
+            }
+            else {
+                Ast.Expr.Function ast = (Ast.Expr.Function) expr;
+                out.writeByte(FlatAst.FUNCTION);
+                expr(ast.getReceiver());
+                writeInt(out, string(ast.getName()));
+                writeInt(out, ast.getArguments().size());
+                for (Ast.Expr argument : ast.getArguments()) {
+                    expr(argument);
+                }
+                Environment.Type owner = ast.getReceiver().isPresent() ? binding(ast.getReceiver().get()::getType) : null;
+                writeInt(out, function(binding(ast::getFunction), owner, ast.getArguments().size()));
+            }
+        }
+
+        private void literal(Object literal) throws IOException {
+            if (literal == null) {
+                out.writeByte(NIL);
+            }
+            else if (literal instanceof Boolean) {
+                out.writeByte((Boolean) literal ? TRUE : FALSE);
+            }
+            else if (literal instanceof BigInteger) {
+                out.writeByte(INTEGER);
+                writeBytes(((BigInteger) literal).toByteArray());
+            }
+            else if (literal instanceof BigDecimal) {
+                out.writeByte(DECIMAL);
+                writeBytes(((BigDecimal) literal).unscaledValue().toByteArray());
+                out.writeInt(((BigDecimal) literal).scale());
+            }
+            else if (literal instanceof Character) {
+                out.writeByte(CHARACTER);
+                out.writeChar((Character) literal);
+            }
+            else if (literal instanceof String) {
+                out.writeByte(STRING);
+                writeInt(out, string((String) literal));
+            }
+            else {
+                throw new IllegalArgumentException("Cannot serialize literal of " + literal.getClass() + ".");
+            }
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeInt(out, bytes.length);
+            out.write(bytes);
+        }
+
+        private int string(String string) {
+            return strings.computeIfAbsent(string, s -> strings.size());
+        }
+
+        /**
+         * Returns the type's index plus one, or 0 for an unset type.
+         */
+        private int type(Environment.Type type) {
+            if (type == null) {
+                return 0;
+            }
+            string(type.getName());
+            return types.computeIfAbsent(type, t -> types.size()) + 1;
+        }
+
+        /**
+         * Returns the variable's index plus one, or 0 for an unset variable.
+         * Variables which are fields of the owner type are loaded from it.
+         */
+        private int variable(Environment.Variable variable, Environment.Type owner) {
+            if (variable == null) {
+                return 0;
+            }
+            Integer index = variables.get(variable);
+            if (index == null) {
+                if (owner != null && binding(() -> owner.getField(variable.getName())) == variable) {
+                    variableEntries.add(new int[] {MEMBER, type(owner), string(variable.getName())});
+                }
+                else {
+                    variableEntries.add(new int[] {DEFINED, string(variable.getName()), string(variable.getJvmName()), type(variable.getType())});
+                }
+                index = variableEntries.size() - 1;
+                variables.put(variable, index);
+            }
+            return index + 1;
+        }
+
+        /**
+         * Returns the function's index plus one, or 0 for an unset function.
+         * Functions which are methods of the owner type are loaded from it.
+         */
+        private int function(Environment.Function function, Environment.Type owner, int arity) {
+            if (function == null) {
+                return 0;
+            }
+            Integer index = functions.get(function);
+            if (index == null) {
+                if (owner != null && binding(() -> owner.getMethod(function.getName(), arity)) == function) {
+                    functionEntries.add(new int[] {MEMBER, type(owner), string(function.getName()), arity});
+                }
+                else {
+                    int[] entry = new int[4 + function.getParameterTypes().size()];
+                    entry[0] = DEFINED;
+                    entry[1] = string(function.getName());
+                    entry[2] = string(function.getJvmName());
+                    entry[3] = type(function.getReturnType());
+                    for (int i = 0; i < function.getParameterTypes().size(); i++) {
+                        entry[4 + i] = type(function.getParameterTypes().get(i));
+                    }
+                    functionEntries.add(entry);
+                }
+                index = functionEntries.size() - 1;
+                functions.put(function, index);
+            }
+            return index + 1;
+        }
+
+        private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+            writeInt(out, values.length);
+            for (int value : values) {
+                writeInt(out, value);
+            }
+        }
+
+        /**
+         * Writes a non-negative int in 7 bit groups, so small values (which
+         * are most counts and indices) take a single byte.
+         */
+        private static void writeInt(DataOutputStream out, int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer in;
+        private String[] strings;
+        private Environment.Type[] types;
+        private Environment.Variable[] variables;
+        private Environment.Function[] functions;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        void tables() throws IOException {
+            strings = new String[readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readInt();
+                strings[i] = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+                in.position(in.position() + length);
+            }
+            types = new Environment.Type[readInt()];
+            for (int i = 0; i < types.length; i++) {
+                try {
+                    types[i] = Environment.getType(strings[readInt()]);
+                }
+                catch (RuntimeException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            variables = new Environment.Variable[readInt()];
+            for (int i = 0; i < variables.length; i++) {
+                int[] entry = readInts();
+                if (entry[0] == MEMBER) {
+                    variables[i] = member(() -> types[entry[1] - 1].getField(strings[entry[2]]));
+                }
+                else {
+                    variables[i] = new Environment.Variable(strings[entry[1]], strings[entry[2]], types[entry[3] - 1], Environment.NIL);
+                }
+            }
+            functions = new Environment.Function[readInt()];
+            for (int i = 0; i < functions.length; i++) {
+                int[] entry = readInts();
+                if (entry[0] == MEMBER) {
+                    functions[i] = member(() -> types[entry[1] - 1].getMethod(strings[entry[2]], entry[3]));
+                }
+                else {
+                    List<Environment.Type> parameterTypes = new ArrayList<>();
+                    for (int j = 4; j < entry.length; j++) {
+                        parameterTypes.add(types[entry[j] - 1]);
+                    }
+                    functions[i] = new Environment.Function(strings[entry[1]], strings[entry[2]], parameterTypes, types[entry[3] - 1], args -> Environment.NIL);
+                }
+            }
+        }
+
+        Ast.Source source() throws IOException {
+            List<Ast.Field> fields = new ArrayList<>();
+            int count = readInt();
+            for (int i = 0; i < count; i++) {
+                Ast.Field field = new Ast.Field(string(), string(), optionalExpr());
+                field.setVariable(variable());
+                fields.add(field);
+            }
+            List<Ast.Method> methods = new ArrayList<>();
+            count = readInt();
+            for (int i = 0; i < count; i++) {
+                String name = string();
+                int parameterCount = readInt();
+                List<String> parameters = new ArrayList<>();
+                List<String> parameterTypeNames = new ArrayList<>();
+                for (int j = 0; j < parameterCount; j++) {
+                    parameters.add(string());
+                    parameterTypeNames.add(string());
+                }
+                Optional<String> returnTypeName = optionalString();
+                Environment.Function function = function();
+                Ast.Method method = new Ast.Method(name, parameters, parameterTypeNames, returnTypeName, statements());
+                method.setFunction(function);
+                methods.add(method);
+            }
+            return new Ast.Source(fields, methods);
+        }
+
+        private List<Ast.Stmt> statements() throws IOException {
+            int count = readInt();
+            List<Ast.Stmt> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(stmt());
+            }
+            return statements;
+        }
+
+        private Ast.Stmt stmt() throws IOException {
+            int kind = in.get();
+            switch (kind) {
+                case FlatAst.EXPRESSION:
+                    return new Ast.Stmt.Expression(expr());
+                case FlatAst.DECLARATION: {
+                    Ast.Stmt.Declaration ast = new Ast.Stmt.Declaration(string(), optionalString(), optionalExpr());
+                    ast.setVariable(variable());
+                    ast.setSlot(readInt() - 1);
+                    return ast;
+                }
+                case FlatAst.ASSIGNMENT:
+                    return new Ast.Stmt.Assignment(expr(), expr());
+                case FlatAst.IF:
+                    return new Ast.Stmt.If(expr(), statements(), statements());
+                case FlatAst.FOR:
+                    return new Ast.Stmt.For(string(), expr(), statements());
+                case FlatAst.WHILE:
+                    return new Ast.Stmt.While(expr(), statements());
+                case FlatAst.RETURN:
+                    return new Ast.Stmt.Return(expr());
+                default:
+                    throw new IOException("Unknown statement kind " + kind + ".");
+            }
+        }
+
+        private Optional<Ast.Expr> optionalExpr() throws IOException {
+            return in.get() != 0 ? Optional.of(expr()) : Optional.empty();
+        }
+
+        private Ast.Expr expr() throws IOException {
+            int kind = in.get();
+            switch (kind) {
+                case FlatAst.LITERAL: {
+                    Ast.Expr.Literal ast = new Ast.Expr.Literal(literal());
+                    ast.setType(type());
+                    return ast;
+                }
+                case FlatAst.GROUP: {
+                    Ast.Expr.Group ast = new Ast.Expr.Group(expr());
+                    ast.setType(type());
+                    return ast;
+                }
+                case FlatAst.BINARY: {
+                    Ast.Expr.Binary ast = new Ast.Expr.Binary(string(), expr(), expr());
+                    ast.setType(type());
+                    return ast;
+                }
+                case FlatAst.ACCESS: {
+                    Ast.Expr.Access ast = new Ast.Expr.Access(optionalExpr(), string());
+                    ast.setVariable(variable());
+                    int slot = readInt() - 1;
+                    if (slot >= 0) {
+                        ast.setAddress(readInt(), slot);
+                    }
+                    return ast;
+                }
+                case FlatAst.FUNCTION: {
+                    Optional<Ast.Expr> receiver = optionalExpr();
+                    String name = string();
+                    int count = readInt();
+                    List<Ast.Expr> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(expr());
+                    }
+                    Ast.Expr.Function ast = new Ast.Expr.Function(receiver, name, arguments);
+                    ast.setFunction(function());
+                    return ast;
+                }
+                default:
+                    throw new IOException("Unknown expression kind " + kind + ".");
+            }
+        }
+
+        private Object literal() throws IOException {
+            int kind = in.get();
+            switch (kind) {
+                case NIL:
+                    return null;
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                case INTEGER:
+                    return new BigInteger(bytes());
+                case DECIMAL:
+                    return new BigDecimal(new BigInteger(bytes()), in.getInt());
+                case CHARACTER:
+                    return in.getChar();
+                case STRING:
+                    return string();
+                default:
+                    throw new IOException("Unknown literal kind " + kind + ".");
+            }
+        }
+
+        private byte[] bytes() {
+            byte[] bytes = new byte[readInt()];
+            in.get(bytes);
+            return bytes;
+        }
+
+        private String string() {
+            return strings[readInt()];
+        }
+
+        private Optional<String> optionalString() {
+            int index = readInt();
+            return index == 0 ? Optional.empty() : Optional.of(strings[index - 1]);
+        }
+
+        private Environment.Type type() {
+            int index = readInt();
+            return index == 0 ? null : types[index - 1];
+        }
+
+        private Environment.Variable variable() {
+            int index = readInt();
+            return index == 0 ? null : variables[index - 1];
+        }
+
+        private Environment.Function function() {
+            int index = readInt();
+            return index == 0 ? null : functions[index - 1];
+        }
+
+        private static <T> T member(Supplier<T> lookup) throws IOException {
+            try {
+                return lookup.get();
+            }
+            catch (IndexOutOfBoundsException e) {
+                throw e;
+            }
+            catch (RuntimeException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+
+        private int[] readInts() {
+            int[] values = new int[readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readInt();
+            }
+            return values;
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+    }
+
+}
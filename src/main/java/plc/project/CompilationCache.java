@@ -0,0 +1,204 @@
+package plc.project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * A cache of analyzed sources keyed by a SHA-256 hash of the source text and
+ * the {@link Environment#getTypeVersion() type version}, so the same text is
+ * only lexed, parsed and analyzed once while it stays in the cache.
+ *
+ * Entries are evicted in least recently used order once there are more than
+ * the maximum number of entries, or their total weight (the length of their
+ * sources) is more than the maximum weight. Concurrent requests for the same
+ * source wait for a single compilation. Errors are thrown to every waiting
+ * request and are not cached. Sources heavier than the maximum weight are
+ * compiled without being cached, rather than evicting every other entry.
+ *
+ * Cached trees are shared between callers and must not be analyzed again.
+ */
+public final class CompilationCache {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Function<String, Ast.Source> compiler;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a cache which compiles sources with the {@link FrontEnd} of the
+     * current thread and a new {@link Analyzer}.
+     */
+    public CompilationCache(int maxEntries, long maxWeight) {
+        this(maxEntries, maxWeight, CompilationCache::compile);
+    }
+
+    public CompilationCache(int maxEntries, long maxWeight, Function<String, Ast.Source> compiler) {
+        if (maxEntries < 0 || maxWeight < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative.");
+        }
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.compiler = compiler;
+    }
+
+    private static Ast.Source compile(String source) {
+        Ast.Source ast = FrontEnd.parse(source);
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Returns the analyzed tree of the source, compiling it if it is not
+     * cached. Exceptions thrown by the compiler are rethrown.
+     */
+    public Ast.Source get(CharSequence source) {
+        String text = source.toString();
+        if (text.length() > maxWeight) {
+            synchronized (this) {
+                misses++;
+            }
+            return compiler.apply(text);
+        }
+        Key key = new Key(text);
+        Entry entry;
+        boolean compile = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+            }
+            else {
+                misses++;
+                entry = new Entry(text.length(), new FutureTask<>(() -> compiler.apply(text)));
+                entries.put(key, entry);
+                weight += entry.weight;
+                compile = true;
+                evict();
+            }
+        }
+        if (compile) {
+            entry.task.run();
+        }
+        try {
+            return entry.task.get();
+        }
+        catch (ExecutionException e) {
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                    weight -= entry.weight;
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for compilation.", e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && (entries.size() > maxEntries || weight > maxWeight)) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CompilationCache{" +
+                "size=" + entries.size() +
+                ", weight=" + weight +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static final class Entry {
+
+        private final long weight;
+        private final FutureTask<Ast.Source> task;
+
+        private Entry(long weight, FutureTask<Ast.Source> task) {
+            this.weight = weight;
+            this.task = task;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final byte[] hash;
+        private final int hashCode;
+
+        private Key(String source) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                int version = Environment.getTypeVersion();
+                digest.update(new byte[] {(byte) (version >>> 24), (byte) (version >>> 16), (byte) (version >>> 8), (byte) version});
+                hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new AssertionError(e);
+            }
+            hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && Arrays.equals(hash, ((Key) obj).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package plc.project;
+
+import java.util.Objects;
+
+/**
+ * A text edit replacing {@code removed} characters at {@code offset} with the
+ * {@code inserted} text, as used for incremental lexing and parsing.
+ */
+public final class Edit {
+
+    private final int offset;
+    private final int removed;
+    private final String inserted;
+
+    public Edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0) {
+            throw new IllegalArgumentException("Edit offset and length must not be negative.");
+        }
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public String getInserted() {
+        return inserted;
+    }
+
+    /**
+     * Returns the change in length of the text, which is how far indices after
+     * the edit are shifted.
+     */
+    public int getDelta() {
+        return inserted.length() - removed;
+    }
+
+    /**
+     * Returns the end of the inserted text in the edited source.
+     */
+    public int getEnd() {
+        return offset + inserted.length();
+    }
+
+    public String apply(String source) {
+        return source.substring(0, offset) + inserted + source.substring(offset + removed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Edit &&
+                offset == ((Edit) obj).offset &&
+                removed == ((Edit) obj).removed &&
+                inserted.equals(((Edit) obj).inserted);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, removed, inserted);
+    }
+
+    @Override
+    public String toString() {
+        return "Edit{" +
+                "offset=" + offset +
+                ", removed=" + removed +
+                ", inserted='" + inserted + '\'' +
+                '}';
+    }
+
+}
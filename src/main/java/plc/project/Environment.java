@@ -1,10 +1,14 @@
 package plc.project;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public final class Environment {
 
@@ -33,6 +37,29 @@ public final class Environment {
         TYPES.put(type.getName(), type);
     }
 
+    /**
+     * Returns a hash of the registered types, including the names, types and
+     * signatures of their fields and methods and those they inherit, so
+     * results which depend on the types (such as serialized trees) can tell
+     * if they are stale, also in another process.
+     */
+    public static int getTypeVersion() {
+        StringBuilder builder = new StringBuilder();
+        for (Type type : new TreeMap<>(TYPES).values()) {
+            builder.append(type.getName()).append(' ').append(type.getJvmName()).append('\n');
+            for (Scope scope = type.getScope(); scope != null; scope = scope.getParent()) {
+                scope.describe(builder);
+            }
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+            return (hash[0] & 0xFF) << 24 | (hash[1] & 0xFF) << 16 | (hash[2] & 0xFF) << 8 | (hash[3] & 0xFF);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static PlcObject create(Object value) {
         return new PlcObject(new Scope(null), value);
     }
@@ -0,0 +1,322 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact encoding of an {@link Ast.Source} in a few primitive arrays,
+ * produced by {@link Parser#parseSourceFlat()}.
+ *
+ * Each node has a kind and a run of integer operands. Operands are either the
+ * id of another node, the index of a value in the constant pool (names, type
+ * names, operators and literal values, each stored once), a count, or -1 for
+ * an absent optional. Nodes are stored in post-order, so children always come
+ * before their parent and the source is the last node. The operands of each
+ * kind are:
+ *
+ *  - {@code SOURCE}: field count, fields, methods
+ *  - {@code FIELD}: name, type name, value
+ *  - {@code METHOD}: name, return type name, parameter count, parameter
+ *    names and type names, statements
+ *  - {@code EXPRESSION}: expression
+ *  - {@code DECLARATION}: name, type name, value
+ *  - {@code ASSIGNMENT}: receiver, value
+ *  - {@code IF}: condition, then statement count, then statements, else
+ *    statements
+ *  - {@code FOR}: name, value, statements
+ *  - {@code WHILE}: condition, statements
+ *  - {@code RETURN}: value
+ *  - {@code LITERAL}: value
+ *  - {@code GROUP}: expression
+ *  - {@code BINARY}: operator, left, right
+ *  - {@code ACCESS}: receiver, name
+ *  - {@code FUNCTION}: receiver, name, arguments
+ *
+ * Existing {@link Ast.Visitor}s walk the encoding through {@link #toAst()},
+ * which creates {@link Ast} nodes on demand: method bodies are only decoded
+ * once their statements are requested.
+ */
+public final class FlatAst {
+
+    public static final int SOURCE = 0;
+    public static final int FIELD = 1;
+    public static final int METHOD = 2;
+    public static final int EXPRESSION = 3;
+    public static final int DECLARATION = 4;
+    public static final int ASSIGNMENT = 5;
+    public static final int IF = 6;
+    public static final int FOR = 7;
+    public static final int WHILE = 8;
+    public static final int RETURN = 9;
+    public static final int LITERAL = 10;
+    public static final int GROUP = 11;
+    public static final int BINARY = 12;
+    public static final int ACCESS = 13;
+    public static final int FUNCTION = 14;
+
+    private final byte[] kinds;
+    private final int[] starts;
+    private final int[] operands;
+    private final Object[] constants;
+    private final int size;
+
+    private FlatAst(byte[] kinds, int[] starts, int[] operands, Object[] constants, int size) {
+        this.kinds = kinds;
+        this.starts = starts;
+        this.operands = operands;
+        this.constants = constants;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the id of the {@code SOURCE} node.
+     */
+    public int getRoot() {
+        return size - 1;
+    }
+
+    public int getKind(int node) {
+        checkNode(node);
+        return kinds[node];
+    }
+
+    public int getOperandCount(int node) {
+        checkNode(node);
+        return starts[node + 1] - starts[node];
+    }
+
+    public int getOperand(int node, int i) {
+        if (i < 0 || i >= getOperandCount(node)) {
+            throw new IndexOutOfBoundsException("Operand " + i + " is out of bounds for node " + node + ".");
+        }
+        return operands[starts[node] + i];
+    }
+
+    public Object getConstant(int index) {
+        return constants[index];
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the arrays of the
+     * encoding, not counting the constants themselves.
+     */
+    public long getFootprint() {
+        return kinds.length + 4L * starts.length + 4L * operands.length + 4L * constants.length;
+    }
+
+    /**
+     * Creates the {@link Ast.Source} this encodes, whose method bodies are
+     * decoded the first time they are requested. Every call creates new
+     * nodes, so analysis results are only kept on the nodes of one call.
+     */
+    public Ast.Source toAst() {
+        return (Ast.Source) toAst(getRoot());
+    }
+
+    /**
+     * Creates the {@link Ast} for the given node and all nodes below it,
+     * except for method bodies as in {@link #toAst()}.
+     */
+    public Ast toAst(int node) {
+        int start = starts[node];
+        switch (getKind(node)) {
+            case SOURCE: {
+                List<Ast.Field> fields = new ArrayList<>();
+                List<Ast.Method> methods = new ArrayList<>();
+                int count = operands[start];
+                for (int i = 1; i < getOperandCount(node); i++) {
+                    if (i <= count) {
+                        fields.add((Ast.Field) toAst(operands[start + i]));
+                    }
+                    else {
+                        methods.add((Ast.Method) toAst(operands[start + i]));
+                    }
+                }
+                return new Ast.Source(fields, methods);
+            }
+            case FIELD:
+                return new Ast.Field(string(operands[start]), string(operands[start + 1]), expr(operands[start + 2]));
+            case METHOD: {
+                List<String> parameters = new ArrayList<>();
+                List<String> parameterTypeNames = new ArrayList<>();
+                int count = operands[start + 2];
+                for (int i = 0; i < count; i++) {
+                    parameters.add(string(operands[start + 3 + 2 * i]));
+                    parameterTypeNames.add(string(operands[start + 4 + 2 * i]));
+                }
+                int body = 3 + 2 * count;
+                return new Ast.Method(string(operands[start]), parameters, parameterTypeNames,
+                        Optional.ofNullable(string(operands[start + 1])), () -> statements(node, body, getOperandCount(node)));
+            }
+            case EXPRESSION:
+                return new Ast.Stmt.Expression(expr(operands[start]).get());
+            case DECLARATION:
+                return new Ast.Stmt.Declaration(string(operands[start]), Optional.ofNullable(string(operands[start + 1])), expr(operands[start + 2]));
+            case ASSIGNMENT:
+                return new Ast.Stmt.Assignment(expr(operands[start]).get(), expr(operands[start + 1]).get());
+            case IF: {
+                int count = operands[start + 1];
+                return new Ast.Stmt.If(expr(operands[start]).get(), statements(node, 2, 2 + count),
+                        statements(node, 2 + count, getOperandCount(node)));
+            }
+            case FOR:
+                return new Ast.Stmt.For(string(operands[start]), expr(operands[start + 1]).get(), statements(node, 2, getOperandCount(node)));
+            case WHILE:
+                return new Ast.Stmt.While(expr(operands[start]).get(), statements(node, 1, getOperandCount(node)));
+            case RETURN:
+                return new Ast.Stmt.Return(expr(operands[start]).get());
+            case LITERAL:
+                return new Ast.Expr.Literal(constants[operands[start]]);
+            case GROUP:
+                return new Ast.Expr.Group(expr(operands[start]).get());
+            case BINARY:
+                return new Ast.Expr.Binary(string(operands[start]), expr(operands[start + 1]).get(), expr(operands[start + 2]).get());
+            case ACCESS:
+                return new Ast.Expr.Access(expr(operands[start]), string(operands[start + 1]));
+            case FUNCTION: {
+                List<Ast.Expr> arguments = new ArrayList<>();
+                for (int i = 2; i < getOperandCount(node); i++) {
+                    arguments.add(expr(operands[start + i]).get());
+                }
+                return new Ast.Expr.Function(expr(operands[start]), string(operands[start + 1]), arguments);
+            }
+            default:
+                throw new AssertionError("Unknown node kind " + kinds[node] + ".");
+        }
+    }
+
+    private String string(int constant) {
+        return constant < 0 ? null : (String) constants[constant];
+    }
+
+    private Optional<Ast.Expr> expr(int node) {
+        return node < 0 ? Optional.empty() : Optional.of((Ast.Expr) toAst(node));
+    }
+
+    private List<Ast.Stmt> statements(int node, int from, int to) {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            statements.add((Ast.Stmt) toAst(operands[starts[node] + i]));
+        }
+        return statements;
+    }
+
+    private void checkNode(int node) {
+        if (node < 0 || node >= size) {
+            throw new IndexOutOfBoundsException("Node " + node + " is out of bounds for " + size + " nodes.");
+        }
+    }
+
+    /**
+     * Writes the nodes of a source as they are parsed by {@link
+     * Parser#parseSourceFlat()}, so no {@link Ast} is created. The operands
+     * of the nodes being parsed are pushed on a stack, and {@link #node(int,
+     * int)} moves the operands pushed since a {@link #mark()} into a new
+     * node.
+     */
+    static final class Builder {
+
+        private byte[] kinds;
+        private int[] starts;
+        private int[] operands;
+        private int size = 0;
+        private int length = 0;
+        private int[] stack = new int[32];
+        private int top = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> indices = new HashMap<>();
+
+        /**
+         * Creates a builder for the given number of tokens, or -1 if unknown.
+         * Every node but the source has a token of its own (such as its
+         * keyword, operator, name or closing semicolon), so there are at most
+         * that many nodes plus one and the node arrays never grow.
+         */
+        Builder(int tokens) {
+            int capacity = tokens < 0 ? 64 : tokens + 1;
+            kinds = new byte[capacity];
+            starts = new int[capacity + 1];
+            operands = new int[Math.max(2 * capacity, 16)];
+        }
+
+        /**
+         * Returns the height of the operand stack, which is where the
+         * operands of the next node start.
+         */
+        int mark() {
+            return top;
+        }
+
+        void push(int value) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top++] = value;
+        }
+
+        /**
+         * Replaces an operand pushed earlier, such as a count which is only
+         * known once the operands after it are parsed.
+         */
+        void set(int position, int value) {
+            stack[position] = value;
+        }
+
+        /**
+         * Returns the index of the value in the constant pool, adding it if
+         * it is not already present.
+         */
+        int constant(Object value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indices.put(value, index);
+            }
+            return index;
+        }
+
+        /**
+         * Creates a node of the given kind from the operands pushed since the
+         * mark, which are popped, and returns its id.
+         */
+        int node(int kind, int mark) {
+            int count = top - mark;
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                starts = Arrays.copyOf(starts, size * 2 + 1);
+            }
+            if (length + count > operands.length) {
+                operands = Arrays.copyOf(operands, Math.max(operands.length * 2, length + count));
+            }
+            System.arraycopy(stack, mark, operands, length, count);
+            kinds[size] = (byte) kind;
+            starts[size] = length;
+            length += count;
+            starts[++size] = length;
+            top = mark;
+            return size - 1;
+        }
+
+        /**
+         * Returns the encoding, whose last node must be the {@code SOURCE}.
+         */
+        FlatAst build() {
+            return new FlatAst(Arrays.copyOf(kinds, size), Arrays.copyOf(starts, size + 1),
+                    Arrays.copyOf(operands, length), constants.toArray(), size);
+        }
+
+    }
+
+}
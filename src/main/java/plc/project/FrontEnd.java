@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * Lexes and parses sources with a {@link Lexer}, {@link TokenBuffer} and
+ * {@link Parser} which are reset and reused for every source, so compiling
+ * many small sources does not allocate a new lexer, char stream, token list
+ * or parser each time. Buffers keep the capacity of the largest source seen.
+ *
+ * Parse errors from either the lexer or the parser carry the {@link
+ * SourceMap} of the source, so their position is available as a line and
+ * column.
+ *
+ * A front end which created its own symbol table empties it before a source
+ * once it holds more than {@link #MAX_SYMBOLS} names, so a long running
+ * process does not keep every name it has ever parsed. A table passed to the
+ * constructor is left to its owner.
+ *
+ * A front end is not thread safe; {@link #parse(CharSequence)} uses one front
+ * end per thread.
+ */
+public final class FrontEnd {
+
+    public static final int MAX_SYMBOLS = 1 << 16;
+
+    private static final ThreadLocal<FrontEnd> LOCAL = ThreadLocal.withInitial(FrontEnd::new);
+
+    private final SymbolTable symbols;
+    private final boolean owned;
+    private final Lexer lexer;
+    private final TokenBuffer tokens;
+    private final Parser parser;
+
+    public FrontEnd() {
+        this(new SymbolTable(), true);
+    }
+
+    public FrontEnd(SymbolTable symbols) {
+        this(symbols, false);
+    }
+
+    private FrontEnd(SymbolTable symbols, boolean owned) {
+        this.symbols = symbols;
+        this.owned = owned;
+        this.lexer = new Lexer("", symbols);
+        this.tokens = new TokenBuffer("", symbols);
+        this.parser = new Parser(tokens);
+    }
+
+    /**
+     * Parses the source with the front end of the current thread.
+     */
+    public static Ast.Source parse(CharSequence input) throws ParseException {
+        return LOCAL.get().parseSource(input);
+    }
+
+    public Ast.Source parseSource(CharSequence input) throws ParseException {
+        if (owned && symbols.size() > MAX_SYMBOLS) {
+            symbols.clear();
+        }
+        lexer.reset(input);
+        lexer.lexBuffer(tokens);
+        parser.reset(tokens);
+        try {
+            return parser.parseSource();
+        }
+        catch (ParseException e) {
+            throw new ParseException(e.getMessage(), e.getIndex(), lexer.getSourceMap());
+        }
+    }
+
+    /**
+     * Parses the input of the lexer while it is lexed on a new thread, see
+     * {@link #parsePipelined(Lexer, Executor)}.
+     */
+    public static Ast.Source parsePipelined(Lexer lexer) throws ParseException {
+        return parsePipelined(lexer, runnable -> {
+            Thread thread = new Thread(runnable, "lexer");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Parses the input of the lexer on the current thread while it is lexed
+     * by a task on the executor, with tokens passed through a {@link
+     * TokenRing}. The result is the same as parsing the output of {@link
+     * Lexer#lex()}. Errors are reported like {@link Parser#Parser(Iterator)}:
+     * the lexer is cancelled as soon as the parser fails, so the error is
+     * whichever comes first in the input.
+     */
+    public static Ast.Source parsePipelined(Lexer lexer, Executor executor) throws ParseException {
+        TokenRing ring = new TokenRing();
+        executor.execute(() -> lexer.lex(ring));
+        try {
+            return new Parser(ring).parseSource();
+        }
+        catch (ParseException e) {
+            if (e.getSourceMap() != null) {
+                throw e;
+            }
+            throw new ParseException(e.getMessage(), e.getIndex(), lexer.getSourceMap());
+        }
+        finally {
+            ring.cancel();
+        }
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+}
@@ -12,6 +12,12 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    /**
+     * True while executing an analyzed method, whose parameters and loop
+     * variables are kept in slots instead of being defined by name.
+     */
+    private boolean addressed = false;
+
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", 1, args -> {
@@ -53,13 +59,19 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
             try {
                 scope = new Scope(curr);
+                addressed = ast.hasFunction();
                 // Check number of arguments
                 if (ast.getParameters().size() != args.size()) {
                     throw new RuntimeException("Incorrect number of arguments passed to method.");
                 }
                 // Create variables for each parameter
                 for (int i = 0; i < ast.getParameters().size(); i++) {
-                    scope.defineVariable(ast.getParameters().get(i), args.get(i));
+                    if (addressed) {
+                        scope.defineSlot(i, args.get(i));
+                    }
+                    else {
+                        scope.defineVariable(ast.getParameters().get(i), args.get(i));
+                    }
                 }
                 // Visit statements
                 for (Ast.Stmt stmt : ast.getStatements()) {
@@ -82,11 +94,15 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Declaration ast) {
+        Environment.PlcObject value = Environment.NIL;
         if (ast.getValue().isPresent()) {
-            scope.defineVariable(ast.getName(), visit(ast.getValue().get()));
+            value = visit(ast.getValue().get());
+        }
+        if (ast.hasSlot()) {
+            scope.defineSlot(ast.getSlot(), value);
         }
         else {
-            scope.defineVariable(ast.getName(), Environment.NIL);
+            scope.defineVariable(ast.getName(), value);
         }
         return Environment.NIL;
     }
@@ -103,6 +119,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.PlcObject receiver = visit(access.getReceiver().get());
             receiver.getField(access.getName()).setValue(visit(ast.getValue()));
         }
+        // Local variable assignment
+        else if (access.hasAddress()) {
+            scope.assignSlot(access.getDepth(), access.getSlot(), visit(ast.getValue()));
+        }
         // Variable assignment
         else {
             Environment.Variable var = scope.lookupVariable(access.getName());
@@ -145,7 +165,12 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         for (Object obj : it) {
             try {
                 scope = new Scope(scope);
-                scope.defineVariable(ast.getName(), (Environment.PlcObject)obj);
+                if (addressed) {
+                    scope.defineSlot(0, (Environment.PlcObject)obj);
+                }
+                else {
+                    scope.defineVariable(ast.getName(), (Environment.PlcObject)obj);
+                }
                 for (Ast.Stmt stmt : ast.getStatements()) {
                     visit(stmt);
                 }
@@ -315,6 +340,9 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.PlcObject receiver = visit(ast.getReceiver().get());
             return receiver.getField(ast.getName()).getValue();
         }
+        else if (ast.hasAddress()) {
+            return scope.lookupSlot(ast.getDepth(), ast.getSlot());
+        }
         else {
             return scope.lookupVariable(ast.getName()).getValue();
         }
@@ -340,8 +368,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         // Regular function
         Environment.Function func = scope.lookupFunction(ast.getName(), ast.getArguments().size());
         Scope curr = scope;
+        boolean currAddressed = addressed;
         Environment.PlcObject returnValue = func.invoke(args);
         scope = curr;
+        addressed = currAddressed;
         return returnValue;
     }
 
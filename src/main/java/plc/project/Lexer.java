@@ -1,7 +1,28 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The lexer works through three main functions:
@@ -10,245 +31,779 @@ import java.util.List;
  *  - {@link #lexToken()}, which lexes the next token
  *  - {@link CharStream}, which manages the state of the lexer and literals
  *
- * If the lexer fails to parse something (such as an unterminated string) you
- * should throw a {@link ParseException} with an index at the character which is
- * invalid or missing.
+ * Tokens are recognized by an explicit DFA. Every character is first mapped to
+ * a character class through a precomputed table, and the class selects the
+ * next state from the transition table. A token ends when the current state
+ * has no transition for the next character, at which point the accepting type
+ * of the state is emitted (backtracking to the last accepting state if needed,
+ * such as the {@code .} in {@code 1.}).
+ *
+ * Input is either a whole {@link String}, a UTF-8 {@link ByteBuffer} (such as
+ * a file mapped with {@link #map(Path)}), or a {@link Reader}/{@link
+ * ReadableByteChannel}, which is read through a bounded buffer. In the latter
+ * case tokens should be pulled lazily through {@link #iterator()} so only the
+ * token being lexed needs to be kept in memory.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are
- * helpers you need to use, they will make the implementation a lot easier.
+ * If the lexer fails to parse something (such as an unterminated string) a
+ * {@link ParseException} is thrown with an index at the character which is
+ * invalid or missing.
  */
 public final class Lexer {
 
-    private final CharStream chars;
+    // Character classes
+    private static final int C_OTHER = 0;
+    private static final int C_SPACE = 1;
+    private static final int C_NEWLINE = 2;
+    private static final int C_LETTER = 3;
+    private static final int C_ESCAPE_LETTER = 4;
+    private static final int C_DIGIT = 5;
+    private static final int C_PLUS = 6;
+    private static final int C_MINUS = 7;
+    private static final int C_DOT = 8;
+    private static final int C_SINGLE_QUOTE = 9;
+    private static final int C_DOUBLE_QUOTE = 10;
+    private static final int C_BACKSLASH = 11;
+    private static final int C_COMPARE = 12;
+    private static final int C_EQUALS = 13;
+    private static final int C_EOF = 14;
+    private static final int CLASS_COUNT = 15;
+
+    // DFA states
+    private static final int S_START = 0;
+    private static final int S_IDENTIFIER = 1;
+    private static final int S_SIGN = 2;
+    private static final int S_INTEGER = 3;
+    private static final int S_POINT = 4;
+    private static final int S_DECIMAL = 5;
+    private static final int S_CHARACTER_OPEN = 6;
+    private static final int S_CHARACTER_ESCAPE = 7;
+    private static final int S_CHARACTER_BODY = 8;
+    private static final int S_CHARACTER_CLOSE = 9;
+    private static final int S_STRING = 10;
+    private static final int S_STRING_ESCAPE = 11;
+    private static final int S_STRING_CLOSE = 12;
+    private static final int S_COMPARE = 13;
+    private static final int S_OPERATOR = 14;
+    private static final int STATE_COUNT = 15;
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final byte[][] TRANSITIONS = new byte[STATE_COUNT][CLASS_COUNT];
+    private static final Token.Type[] ACCEPTS = new Token.Type[STATE_COUNT];
+    private static final String[][] ERRORS = new String[STATE_COUNT][CLASS_COUNT];
+
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 16;
 
-    private final String identifierRegex = "[A-Za-z_][A-Za-z0-9_-]*";
-    private final String numberRegex = "[+-]?[0-9]+(.[0-9]+)?";
-    private final String characterRegex = "'([^'\\n\\r\\\\] | (\\\\[bnrt'\"\\\\]))'";
-    private final String stringRegex = "\"([^\"\\n\\r\\\\] | (\\\\[bnrt'\"\\\\]))*\"";
-    private final String escapeRegex = "\\\\[bnrt'\"\\\\]";
-    private final String operatorRegex = "([<>!=]=?)|(.)";
-    private final String whitespaceRegex = "[ \b\n\r\t]";
+    private CharStream chars;
+    private final SymbolTable symbols;
+    private final StringBuilder builder = new StringBuilder();
+    private SourceMap lines = new SourceMap();
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this(input, new SymbolTable());
     }
 
     /**
-     * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
-     * whitespace where appropriate.
+     * Creates a lexer which interns identifiers in the given symbol table,
+     * allowing it to be shared with other lexers and later phases.
      */
-    public List<Token> lex() {
-        List<Token> tokens = new ArrayList<Token>();
-        while (chars.has(0)) {
-            if (peek(whitespaceRegex)) {
-                match(whitespaceRegex);
-                chars.skip();
+    public Lexer(String input, SymbolTable symbols) {
+        this(new CharStream.Text(input), symbols);
+    }
+
+    private Lexer(CharStream chars, SymbolTable symbols) {
+        this.chars = chars;
+        this.symbols = symbols;
+    }
+
+    public Lexer(Reader reader) {
+        this(reader, CharStream.Buffered.DEFAULT_CAPACITY);
+    }
+
+    public Lexer(Reader reader, int bufferSize) {
+        this(new CharStream.Buffered(reader, bufferSize), new SymbolTable());
+    }
+
+    /**
+     * Lexes UTF-8 encoded input directly from the buffer without decoding it
+     * into a {@link String}. Token indices are still character offsets.
+     */
+    public Lexer(ByteBuffer input) {
+        this(new CharStream.Mapped(input), new SymbolTable());
+    }
+
+    /**
+     * Lexes UTF-8 encoded input from the channel.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
+    }
+
+    /**
+     * Returns the symbol table identifier names are interned in.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the start of every line lexed so far, which covers the whole
+     * input once it has been lexed.
+     */
+    public SourceMap getSourceMap() {
+        return lines;
+    }
+
+    /**
+     * Restarts the lexer at the beginning of a new input, reusing its char
+     * stream and literal buffer. Identifiers are still interned in the same
+     * symbol table, so names shared between inputs are only stored once.
+     */
+    public void reset(CharSequence input) {
+        lines = new SourceMap();
+        if (chars instanceof CharStream.Text) {
+            ((CharStream.Text) chars).reset(input.toString());
+        }
+        else {
+            chars = new CharStream.Text(input.toString());
+        }
+    }
+
+    /**
+     * Creates a lexer over the memory-mapped contents of a UTF-8 file.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Lexes the input in chunks on the common {@link ForkJoinPool}, producing
+     * the same tokens and errors as {@link #lex()}.
+     */
+    public List<Token> lexParallel() {
+        return lexParallel(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Lexes the input in chunks of roughly {@code chunkSize} characters
+     * concurrently on the given pool. This requires the lexer to have been
+     * created with a {@link String} input.
+     *
+     * Chunks are split just after a newline. A newline is never part of a
+     * valid token and ends every token which does not fail (including the
+     * lookahead of numbers), while a character or string literal containing
+     * one fails at the newline itself. Each chunk can therefore be lexed on
+     * its own with global indices, and the error of the earliest failing
+     * chunk is the one {@link #lex()} would throw.
+     */
+    public List<Token> lexParallel(ForkJoinPool pool, int chunkSize) {
+        if (!(chars instanceof CharStream.Text)) {
+            throw new IllegalStateException("Parallel lexing requires a String input.");
+        }
+        String input = ((CharStream.Text) chars).input;
+        List<Chunk> chunks = new ArrayList<>();
+        int start = chars.getIndex();
+        while (start < input.length()) {
+            int newline = start + chunkSize < input.length() ? input.indexOf('\n', start + chunkSize) : -1;
+            int end = newline < 0 ? input.length() : newline + 1;
+            chunks.add(new Chunk(input, start, end, symbols));
+            start = end;
+        }
+        pool.invoke(new RecursiveAction() {
+
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(chunks);
             }
-            else {
-                Token newToken = lexToken();
-                tokens.add(newToken);
+
+        });
+        List<Token> tokens = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            lines.addLines(chunk.lines);
+            if (chunk.exception != null) {
+                throw new ParseException(chunk.exception.getMessage(), chunk.exception.getIndex(), lines);
             }
+            tokens.addAll(chunk.tokens);
         }
         return tokens;
     }
 
     /**
-     * This method determines the type of the next token, delegating to the
-     * appropriate lex method. As such, it is best for this method to not change
-     * the state of the char stream (thus, use peek not match).
-     *
-     * The next character should start a valid token since whitespace is handled
-     * by {@link #lex()}
+     * Lexes one range of the input for {@link #lexParallel(ForkJoinPool, int)},
+     * keeping any exception so that errors are reported in input order.
      */
-    public Token lexToken() {
-        if (peek("\'")) {
-            return lexCharacter();
+    private static final class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String input;
+        private final int start;
+        private final int end;
+        private final SymbolTable symbols;
+        private List<Token> tokens;
+        private SourceMap lines;
+        private ParseException exception;
+
+        private Chunk(String input, int start, int end, SymbolTable symbols) {
+            this.input = input;
+            this.start = start;
+            this.end = end;
+            this.symbols = symbols;
         }
-        else if (peek("\"")) {
-            return lexString();
+
+        @Override
+        protected void compute() {
+            Lexer lexer = new Lexer(new CharStream.Text(input, start, end), symbols);
+            lines = lexer.lines;
+            try {
+                tokens = lexer.lex();
+            }
+            catch (ParseException e) {
+                exception = e;
+            }
         }
-        else if (peek("[+-]","[0-9]") || peek("[0-9]")) {
-            return lexNumber();
+
+    }
+
+    /**
+     * Updates the tokens of a source after an edit, where {@code source} is
+     * the text after the edit has been applied.
+     *
+     * Lexing restarts at the first token which could be affected (the DFA
+     * looks at most two characters past the end of a token) and stops once a
+     * token past the edit starts where an old token did, since from there on
+     * the text and thus the tokens are the same. The returned list shares the
+     * old tokens before and after that range with the old list, and only
+     * shifts those after it by the change in length when they are read, so
+     * the cost of an edit does not depend on the length of the source.
+     *
+     * Identifiers are interned in a new symbol table; see {@link
+     * #relex(List, String, Edit, SymbolTable)} to use the table of the old
+     * tokens instead.
+     */
+    public static List<Token> relex(List<Token> tokens, String source, Edit edit) {
+        return relex(tokens, source, edit, new SymbolTable());
+    }
+
+    /**
+     * Updates the tokens of a source after an edit like {@link #relex(List,
+     * String, Edit)}, interning identifiers in the given table. This should
+     * be the table the old tokens were interned in (such as {@link
+     * #getSymbols()} of their lexer), so relexed names share their instance
+     * and id with the names around them.
+     */
+    public static List<Token> relex(List<Token> tokens, String source, Edit edit, SymbolTable symbols) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Token token = tokens.get(middle);
+            if (token.getIndex() + token.getLiteral().length() + 1 < edit.getOffset()) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
         }
-        else if (peek("[A-Za-z_]")) {
-            return lexIdentifier();
+        int first = low;
+        int restart = first < tokens.size() ? Math.min(tokens.get(first).getIndex(), edit.getOffset()) : edit.getOffset();
+        List<Token> relexed = new ArrayList<>();
+        Lexer lexer = new Lexer(new CharStream.Text(source, restart), symbols);
+        int old = first;
+        Token token;
+        while ((token = lexer.next()) != null) {
+            if (token.getIndex() >= edit.getEnd()) {
+                int index = token.getIndex() - edit.getDelta();
+                while (old < tokens.size() && tokens.get(old).getIndex() < index) {
+                    old++;
+                }
+                if (old < tokens.size() && tokens.get(old).getIndex() == index) {
+                    break;
+                }
+            }
+            relexed.add(token);
         }
-        else {
-            return lexOperator();
+        List<Edited.Range> ranges = new ArrayList<>();
+        Edited.slice(tokens, 0, first, 0, ranges);
+        Edited.slice(relexed, 0, relexed.size(), 0, ranges);
+        if (token != null) {
+            Edited.slice(tokens, old, tokens.size(), edit.getDelta(), ranges);
         }
+        Edited result = new Edited(ranges);
+        return ranges.size() > Edited.MAX_RANGES ? new ArrayList<>(result) : result;
     }
 
-    public Token lexIdentifier() {
-        // First letter
-        match("[A-Za-z_]");
+    /**
+     * The tokens after an edit, made of ranges of other token lists with the
+     * change in index of each range, which is applied when a token is read.
+     * Relexing an edited list slices its ranges rather than nesting lists, and
+     * once there are more than {@link #MAX_RANGES} ranges the tokens are
+     * copied into a plain list instead.
+     */
+    private static final class Edited extends AbstractList<Token> implements RandomAccess {
 
-        // Loop
-        while (peek("[A-Za-z0-9_-]")) {
-            match("[A-Za-z0-9_-]");
-        }
-        return chars.emit(Token.Type.IDENTIFIER);
+        private static final int MAX_RANGES = 64;
 
-    }
+        private final Range[] ranges;
+        private final int[] starts;
+        private final int size;
 
-    public Token lexNumber() {
-        // +/-
-        if (peek("[+-]")) {
-            match("[+-]");
+        private Edited(List<Range> ranges) {
+            this.ranges = ranges.toArray(new Range[0]);
+            this.starts = new int[this.ranges.length];
+            int size = 0;
+            for (int i = 0; i < this.ranges.length; i++) {
+                starts[i] = size;
+                size += this.ranges[i].to - this.ranges[i].from;
+            }
+            this.size = size;
         }
 
-        // Numbers
-        if (peek("[0-9]")) {
-            while (peek("[0-9]")) {
-                match("[0-9]");
+        /**
+         * Adds the ranges covering the tokens [from, to) of a list, with their
+         * indices changed by delta.
+         */
+        private static void slice(List<Token> tokens, int from, int to, int delta, List<Range> ranges) {
+            if (from >= to) {
+                return;
+            }
+            if (!(tokens instanceof Edited)) {
+                ranges.add(new Range(tokens, from, to, delta));
+                return;
+            }
+            Edited edited = (Edited) tokens;
+            for (int i = edited.range(from); i < edited.ranges.length && edited.starts[i] < to; i++) {
+                Range range = edited.ranges[i];
+                int start = Math.max(from - edited.starts[i], 0);
+                int end = Math.min(to - edited.starts[i], range.to - range.from);
+                ranges.add(new Range(range.tokens, range.from + start, range.from + end, range.delta + delta));
             }
         }
 
-        // Decimal
-        if (peek("[.]", "[0-9]")) {
-            match("[.]");
-            if (peek("[0-9]")) {
-                while (peek("[0-9]")) {
-                    match("[0-9]");
+        private int range(int index) {
+            int low = 0;
+            int high = ranges.length - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                }
+                else {
+                    high = middle - 1;
                 }
             }
-            return chars.emit(Token.Type.DECIMAL);
-        }
-        else {
-            return chars.emit(Token.Type.INTEGER);
+            return low;
         }
-    }
 
-    public Token lexCharacter() {
-        // Open
-        match("\'");
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            int i = range(index);
+            Range range = ranges[i];
+            return range.tokens.get(range.from + index - starts[i]).shift(range.delta);
+        }
 
-        // Character
-        if (peek("\\\\")) {
-            lexEscape();
+        @Override
+        public int size() {
+            return size;
         }
-        else if (peek("[^'\\n\\r\\\\]")) {
-            match("[^'\\n\\r\\\\]");
+
+        private static final class Range {
+
+            private final List<Token> tokens;
+            private final int from;
+            private final int to;
+            private final int delta;
+
+            private Range(List<Token> tokens, int from, int to, int delta) {
+                this.tokens = tokens;
+                this.from = from;
+                this.to = to;
+                this.delta = delta;
+            }
+
         }
-        else {
-            throw new ParseException("Empty character", chars.index);
+
+    }
+
+    /**
+     * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
+     * whitespace where appropriate.
+     */
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<Token>();
+        Token token;
+        while ((token = next()) != null) {
+            tokens.add(token);
         }
+        return tokens;
+    }
 
-        // Close
-        if (peek("\'")) {
-            match("\'");
+    /**
+     * Lexes the input into the given ring, which is closed at the end of the
+     * input or failed with the exception that stopped lexing. Lexing stops
+     * as soon as the ring is cancelled. This is the producer side of {@link
+     * FrontEnd#parsePipelined(Lexer)}.
+     */
+    public void lex(TokenRing ring) {
+        try {
+            Token token;
+            while ((token = next()) != null) {
+                ring.put(token);
+            }
+            ring.close();
         }
-        else {
-            throw new ParseException("Invalid character", chars.index);
+        catch (CancellationException e) {
+            // The consumer has stopped and no longer reads the ring
+        }
+        catch (RuntimeException e) {
+            ring.fail(e);
         }
-        return chars.emit(Token.Type.CHARACTER);
     }
 
-    public Token lexString() {
-        // Open
-        match("\"");
+    /**
+     * Returns an iterator which lexes tokens on demand, in the same way as
+     * {@link #lex()}. A {@link ParseException} is thrown from {@code hasNext}
+     * once the invalid token is reached.
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            private Token next;
 
-        while (chars.has(0) && chars.get(0) != '\"') {
-            if (peek("[^\"\\n\\r\\\\]")) {
-                match("[^\"\\n\\r\\\\]");
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = Lexer.this.next();
+                }
+                return next != null;
             }
-            else if (peek("\\\\")) {
-                lexEscape();
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Token token = next;
+                next = null;
+                return token;
+            }
+
+        };
+    }
+
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    /**
+     * Skips whitespace and lexes the next token, or returns {@code null} at
+     * the end of the input.
+     */
+    private Token next() {
+        while (chars.has(0)) {
+            int cls = classify(chars.get(0));
+            if (cls == C_SPACE || cls == C_NEWLINE) {
+                skipWhitespace(cls);
             }
             else {
-                throw new ParseException("Invalid character in string", chars.index);
+                return lexToken();
             }
         }
+        return null;
+    }
 
-        // Close
-        if (peek("\"")) {
-            match("\"");
-        }
-        else {
-            throw new ParseException("Unterminated string", chars.index);
+    /**
+     * Skips a whitespace character, recording the start of a new line after a
+     * {@code \n}, or a {@code \r} which is not followed by one.
+     */
+    private void skipWhitespace(int cls) {
+        if (cls == C_NEWLINE && (chars.get(0) == '\n' || !chars.has(1) || chars.get(1) != '\n')) {
+            lines.addLine(chars.getIndex() + 1);
         }
-        return chars.emit(Token.Type.STRING);
+        chars.advance();
+        chars.skip();
     }
 
-    public void lexEscape() {
-        match("\\\\");
-        if (peek("[bnrt'\"\\\\]")) {
-            match("[bnrt'\"\\\\]");
-        }
-        else {
-            throw new ParseException("Invalid escape", chars.index);
-        }
+    /**
+     * Lexes the whole input into a {@link TokenBuffer}, which stores tokens as
+     * offsets into the input instead of {@link Token} objects. This requires
+     * the lexer to have been created with a {@link String} input.
+     */
+    public TokenBuffer lexBuffer() {
+        return lexBuffer(new TokenBuffer("", symbols));
     }
 
-    public Token lexOperator() {
-        // Special operator
-        if (peek("[<>!=]")) {
-            match("[<>!=]");
-            if (peek("=")) {
-                match("=");
-            }
+    /**
+     * Lexes the input into the given buffer, replacing its previous contents
+     * but keeping its arrays so they can be reused between inputs.
+     */
+    public TokenBuffer lexBuffer(TokenBuffer tokens) {
+        if (!(chars instanceof CharStream.Text)) {
+            throw new IllegalStateException("Token buffers require a String input.");
         }
-
-        // Any character
-        else{
-            match(".");
+        tokens.reset(((CharStream.Text) chars).input);
+        while (chars.has(0)) {
+            int cls = classify(chars.get(0));
+            if (cls == C_SPACE || cls == C_NEWLINE) {
+                skipWhitespace(cls);
+            }
+            else {
+                Token.Type type = scan();
+                Token.Kind kind = Token.Kind.of(type, chars.getToken());
+                tokens.add(kind, chars.getTokenStart(), chars.length, Token.decode(type, chars.getToken(), builder));
+                chars.skip();
+            }
         }
+        return tokens;
+    }
 
-        return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Runs the DFA from the start state and emits the longest token starting at
+     * the current position.
+     *
+     * The next character should start a valid token since whitespace is handled
+     * by {@link #lex()}
+     */
+    public Token lexToken() {
+        return emit(scan());
     }
 
     /**
-     * Returns true if the next sequence of characters match the given patterns,
-     * which should be a regex. For example, {@code peek("a", "b", "c")} would
-     * return true if the next characters are {@code 'a', 'b', 'c'}.
+     * Emits the current token with its {@link Token.Kind}. Keywords and
+     * operators use the constant literal of their kind, and identifiers are
+     * interned in the symbol table, so neither copies the source. Literals
+     * have their value decoded while the token is still in the buffer, with
+     * strings decoded into a builder shared between tokens.
      */
-    public boolean peek(String... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!chars.has(i) || !String.valueOf(chars.get(i)).matches(patterns[i])) {
-                return false;
-            }
+    private Token emit(Token.Type type) {
+        Token.Kind kind = Token.Kind.of(type, chars.getToken());
+        if (kind.getLiteral() != null) {
+            return chars.emit(kind, kind.getLiteral());
         }
-        return true;
+        else if (type == Token.Type.IDENTIFIER) {
+            return chars.emit(kind, symbols.intern(chars.getToken()));
+        }
+        else if (type == Token.Type.OPERATOR) {
+            return chars.emit(kind);
+        }
+        Object value = Token.decode(type, chars.getToken(), builder);
+        return chars.emit(kind, chars.literal(chars.getTokenStart(), chars.getIndex()), value);
     }
 
     /**
-     * Returns true in the same way as {@link #peek(String...)}, but also
-     * advances the character stream past all matched characters if peek returns
-     * true. Hint - it's easiest to have this method simply call peek.
+     * Advances the char stream over the longest token starting at the current
+     * position and returns its type, leaving the token to be emitted.
      */
-    public boolean match(String... patterns) {
-        boolean peek = peek(patterns);
-        if (peek) {
-            for (int i = 0; i < patterns.length; i++) {
-                chars.advance();
+    private Token.Type scan() {
+        int state = S_START;
+        int acceptState = -1;
+        int acceptLength = 0;
+        while (true) {
+            int cls = chars.has(0) ? classify(chars.get(0)) : C_EOF;
+            int next = TRANSITIONS[state][cls];
+            if (next < 0) {
+                if (ACCEPTS[state] != null) {
+                    return ACCEPTS[state];
+                }
+                else if (acceptState >= 0) {
+                    chars.rewind(chars.length - acceptLength);
+                    return ACCEPTS[acceptState];
+                }
+                throw new ParseException(ERRORS[state][cls], chars.index, lines);
+            }
+            if (ACCEPTS[state] != null) {
+                acceptState = state;
+                acceptLength = chars.length;
             }
+            chars.advance();
+            state = next;
+        }
+    }
+
+    private static int classify(char c) {
+        return c < 128 ? CLASSES[c] : C_OTHER;
+    }
+
+    private static void classes(String characters, int cls) {
+        for (int i = 0; i < characters.length(); i++) {
+            CLASSES[characters.charAt(i)] = (byte) cls;
+        }
+    }
+
+    private static void transition(int from, int to, int... classes) {
+        for (int cls : classes) {
+            TRANSITIONS[from][cls] = (byte) to;
+        }
+    }
+
+    private static void error(int state, String message, int... classes) {
+        for (int cls : classes) {
+            ERRORS[state][cls] = message;
+        }
+    }
+
+    static {
+        // Character classes
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] = C_LETTER;
+            CLASSES[Character.toLowerCase(c)] = C_LETTER;
+        }
+        classes("_", C_LETTER);
+        classes("bnrt", C_ESCAPE_LETTER);
+        classes("0123456789", C_DIGIT);
+        classes(" \b\t", C_SPACE);
+        classes("\n\r", C_NEWLINE);
+        classes("+", C_PLUS);
+        classes("-", C_MINUS);
+        classes(".", C_DOT);
+        classes("'", C_SINGLE_QUOTE);
+        classes("\"", C_DOUBLE_QUOTE);
+        classes("\\", C_BACKSLASH);
+        classes("<>!", C_COMPARE);
+        classes("=", C_EQUALS);
+
+        int[] all = new int[CLASS_COUNT - 1];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
         }
-        return peek;
+        int[] escapes = {C_ESCAPE_LETTER, C_SINGLE_QUOTE, C_DOUBLE_QUOTE, C_BACKSLASH};
+        for (byte[] row : TRANSITIONS) {
+            Arrays.fill(row, (byte) -1);
+        }
+
+        // Start
+        transition(S_START, S_OPERATOR, all);
+        transition(S_START, S_IDENTIFIER, C_LETTER, C_ESCAPE_LETTER);
+        transition(S_START, S_INTEGER, C_DIGIT);
+        transition(S_START, S_SIGN, C_PLUS, C_MINUS);
+        transition(S_START, S_CHARACTER_OPEN, C_SINGLE_QUOTE);
+        transition(S_START, S_STRING, C_DOUBLE_QUOTE);
+        transition(S_START, S_COMPARE, C_COMPARE, C_EQUALS);
+        error(S_START, "Unexpected end of input", C_EOF);
+
+        // Identifier
+        transition(S_IDENTIFIER, S_IDENTIFIER, C_LETTER, C_ESCAPE_LETTER, C_DIGIT, C_MINUS);
+        ACCEPTS[S_IDENTIFIER] = Token.Type.IDENTIFIER;
+
+        // Number
+        transition(S_SIGN, S_INTEGER, C_DIGIT);
+        ACCEPTS[S_SIGN] = Token.Type.OPERATOR;
+        transition(S_INTEGER, S_INTEGER, C_DIGIT);
+        transition(S_INTEGER, S_POINT, C_DOT);
+        ACCEPTS[S_INTEGER] = Token.Type.INTEGER;
+        transition(S_POINT, S_DECIMAL, C_DIGIT);
+        transition(S_DECIMAL, S_DECIMAL, C_DIGIT);
+        ACCEPTS[S_DECIMAL] = Token.Type.DECIMAL;
+
+        // Character
+        transition(S_CHARACTER_OPEN, S_CHARACTER_BODY, all);
+        transition(S_CHARACTER_OPEN, S_CHARACTER_ESCAPE, C_BACKSLASH);
+        TRANSITIONS[S_CHARACTER_OPEN][C_SINGLE_QUOTE] = -1;
+        TRANSITIONS[S_CHARACTER_OPEN][C_NEWLINE] = -1;
+        error(S_CHARACTER_OPEN, "Empty character", C_SINGLE_QUOTE, C_NEWLINE, C_EOF);
+        transition(S_CHARACTER_ESCAPE, S_CHARACTER_BODY, escapes);
+        error(S_CHARACTER_ESCAPE, "Invalid escape", all);
+        error(S_CHARACTER_ESCAPE, "Invalid escape", C_EOF);
+        transition(S_CHARACTER_BODY, S_CHARACTER_CLOSE, C_SINGLE_QUOTE);
+        error(S_CHARACTER_BODY, "Invalid character", all);
+        error(S_CHARACTER_BODY, "Invalid character", C_EOF);
+        ACCEPTS[S_CHARACTER_CLOSE] = Token.Type.CHARACTER;
+
+        // String
+        transition(S_STRING, S_STRING, all);
+        transition(S_STRING, S_STRING_ESCAPE, C_BACKSLASH);
+        transition(S_STRING, S_STRING_CLOSE, C_DOUBLE_QUOTE);
+        TRANSITIONS[S_STRING][C_NEWLINE] = -1;
+        error(S_STRING, "Invalid character in string", C_NEWLINE);
+        error(S_STRING, "Unterminated string", C_EOF);
+        transition(S_STRING_ESCAPE, S_STRING, escapes);
+        error(S_STRING_ESCAPE, "Invalid escape", all);
+        error(S_STRING_ESCAPE, "Invalid escape", C_EOF);
+        ACCEPTS[S_STRING_CLOSE] = Token.Type.STRING;
+
+        // Operator
+        transition(S_COMPARE, S_OPERATOR, C_EQUALS);
+        ACCEPTS[S_COMPARE] = Token.Type.OPERATOR;
+        ACCEPTS[S_OPERATOR] = Token.Type.OPERATOR;
     }
 
     /**
-     * A helper class maintaining the input string, current index of the char
-     * stream, and the current length of the token being matched.
+     * A helper class maintaining the input, current index of the char stream,
+     * and the current length of the token being matched. Subclasses provide
+     * the characters, with {@link #index} always being the offset from the
+     * start of the input.
      *
-     * You should rely on peek/match for state management in nearly all cases.
-     * The only field you need to access is {@link #index} for any {@link
-     * ParseException} which is thrown.
+     * The only field the lexer needs to access directly is {@link #index} for
+     * any {@link ParseException} which is thrown.
      */
-    public static final class CharStream {
+    public static abstract class CharStream {
 
-        private final String input;
         private int index = 0;
         private int length = 0;
+        private final CharSequence token = new CharSequence() {
 
-        public CharStream(String input) {
-            this.input = input;
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public char charAt(int i) {
+                return getTokenChar(i);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().substring(start, end);
+            }
+
+            @Override
+            public String toString() {
+                return literal(getTokenStart(), index).toString();
+            }
+
+        };
+
+        protected CharStream() {}
+
+        /**
+         * Creates a stream starting at the given index of the input.
+         */
+        protected CharStream(int index) {
+            this.index = index;
         }
 
-        public boolean has(int offset) {
-            return index + offset < input.length();
+        public abstract boolean has(int offset);
+
+        public abstract char get(int offset);
+
+        /**
+         * Returns the input between the given indices, which are always within
+         * the current token. This may be a view which is only copied once the
+         * token's literal is requested.
+         */
+        protected abstract CharSequence literal(int start, int end);
+
+        /**
+         * Returns the character at offset {@code i} from the start of the
+         * current token.
+         */
+        protected abstract char getTokenChar(int i);
+
+        /**
+         * Returns a view of the current token, which is only valid until the
+         * token is emitted or skipped.
+         */
+        public CharSequence getToken() {
+            return token;
         }
 
-        public char get(int offset) {
-            return input.charAt(index + offset);
+        public int getIndex() {
+            return index;
         }
 
         public void advance() {
@@ -256,14 +811,383 @@ public final class Lexer {
             length++;
         }
 
+        /**
+         * Moves back over the last {@code count} characters of the current
+         * token, used when the DFA backtracks to an earlier accepting state.
+         */
+        public void rewind(int count) {
+            index -= count;
+            length -= count;
+        }
+
         public void skip() {
             length = 0;
         }
 
+        /**
+         * Moves to the given index, discarding the current token.
+         */
+        protected void reset(int index) {
+            this.index = index;
+            this.length = 0;
+        }
+
         public Token emit(Token.Type type) {
+            return emit(Token.Kind.of(type, token));
+        }
+
+        public Token emit(Token.Kind kind) {
+            return emit(kind, literal(index - length, index));
+        }
+
+        public Token emit(Token.Kind kind, CharSequence literal) {
+            return emit(kind, literal, null);
+        }
+
+        public Token emit(Token.Kind kind, CharSequence literal, Object value) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            return new Token(kind, literal, start, value);
+        }
+
+        /**
+         * Returns the index of the first character of the current token.
+         */
+        protected int getTokenStart() {
+            return index - length;
+        }
+
+        public static final class Text extends CharStream {
+
+            private String input;
+            private int end;
+
+            public Text(String input) {
+                this(input, 0, input.length());
+            }
+
+            public Text(String input, int index) {
+                this(input, index, input.length());
+            }
+
+            /**
+             * Creates a stream over the range of the input from {@code index}
+             * to {@code end}, with indices still relative to the whole input.
+             */
+            public Text(String input, int index, int end) {
+                super(index);
+                this.input = input;
+                this.end = end;
+            }
+
+            /**
+             * Restarts the stream at the beginning of a new input.
+             */
+            public void reset(String input) {
+                this.input = input;
+                this.end = input.length();
+                reset(0);
+            }
+
+            @Override
+            public boolean has(int offset) {
+                return getIndex() + offset < end;
+            }
+
+            @Override
+            public char get(int offset) {
+                return input.charAt(getIndex() + offset);
+            }
+
+            @Override
+            protected CharSequence literal(int start, int end) {
+                return input.substring(start, end);
+            }
+
+            @Override
+            protected char getTokenChar(int i) {
+                return input.charAt(getTokenStart() + i);
+            }
+
+        }
+
+        /**
+         * Reads characters from a {@link Reader} into a fixed size buffer.
+         * When the buffer is exhausted, characters before the current token are
+         * discarded and the rest is refilled; the buffer only grows if a single
+         * token is longer than its capacity.
+         */
+        public static final class Buffered extends CharStream {
+
+            public static final int DEFAULT_CAPACITY = 8192;
+
+            private final Reader reader;
+            private char[] buffer;
+            private int start = 0;
+            private int limit = 0;
+            private boolean eof = false;
+
+            public Buffered(Reader reader, int capacity) {
+                if (capacity <= 0) {
+                    throw new IllegalArgumentException("Buffer capacity must be positive.");
+                }
+                this.reader = reader;
+                this.buffer = new char[capacity];
+            }
+
+            @Override
+            public boolean has(int offset) {
+                int target = getIndex() + offset;
+                return target < start + limit || fill(target);
+            }
+
+            @Override
+            public char get(int offset) {
+                if (!has(offset)) {
+                    throw new IndexOutOfBoundsException("Index " + (getIndex() + offset) + " is past the end of the input.");
+                }
+                return buffer[getIndex() + offset - start];
+            }
+
+            @Override
+            protected CharSequence literal(int start, int end) {
+                return new String(buffer, start - this.start, end - start);
+            }
+
+            @Override
+            protected char getTokenChar(int i) {
+                return buffer[getTokenStart() - start + i];
+            }
+
+            /**
+             * Reads until the buffer holds the character at index {@code
+             * target}, returning false if the input ends first.
+             */
+            private boolean fill(int target) {
+                while (target >= start + limit && !eof) {
+                    if (limit == buffer.length) {
+                        compact();
+                    }
+                    try {
+                        int read = reader.read(buffer, limit, buffer.length - limit);
+                        if (read < 0) {
+                            eof = true;
+                        }
+                        else {
+                            limit += read;
+                        }
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return target < start + limit;
+            }
+
+            /**
+             * Discards the characters before the current token, growing the
+             * buffer instead if the token already fills it.
+             */
+            private void compact() {
+                int keep = getTokenStart() - start;
+                if (keep == 0) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                else {
+                    System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+                    limit -= keep;
+                    start += keep;
+                }
+            }
+
+        }
+
+
+        /**
+         * Reads UTF-8 characters directly from a byte buffer. A cursor tracks
+         * the byte position of the current character, with the low bit
+         * marking the second half of a surrogate pair, so only the characters
+         * actually looked at are decoded.
+         */
+        public static final class Mapped extends CharStream {
+
+            private final ByteBuffer bytes;
+            private long cursor = 0;
+            private long tokenCursor = 0;
+
+            public Mapped(ByteBuffer bytes) {
+                this.bytes = bytes;
+            }
+
+            @Override
+            public boolean has(int offset) {
+                long position = cursor;
+                for (int i = 0; i < offset && position >>> 1 < bytes.limit(); i++) {
+                    position = next(position);
+                }
+                return position >>> 1 < bytes.limit();
+            }
+
+            @Override
+            public char get(int offset) {
+                long position = cursor;
+                for (int i = 0; i < offset; i++) {
+                    position = next(position);
+                }
+                return charAt(position);
+            }
+
+            private char charAt(long position) {
+                int b = bytes.get((int) (position >>> 1));
+                if (b >= 0) {
+                    return (char) b;
+                }
+                int codePoint = decode((int) (position >>> 1));
+                if (Character.isSupplementaryCodePoint(codePoint)) {
+                    return (position & 1) == 0 ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+                }
+                return (char) codePoint;
+            }
+
+            @Override
+            public void advance() {
+                cursor = next(cursor);
+                super.advance();
+            }
+
+            @Override
+            public void rewind(int count) {
+                for (int i = 0; i < count; i++) {
+                    cursor = previous(cursor);
+                }
+                super.rewind(count);
+            }
+
+            @Override
+            public void skip() {
+                tokenCursor = cursor;
+                super.skip();
+            }
+
+            @Override
+            protected CharSequence literal(int start, int end) {
+                return new Slice(bytes, tokenCursor, cursor, end - start);
+            }
+
+            /**
+             * Reads ASCII tokens directly from the bytes, and otherwise walks
+             * the cursor from the start of the token.
+             */
+            @Override
+            protected char getTokenChar(int i) {
+                int start = (int) (tokenCursor >>> 1);
+                if ((int) (cursor >>> 1) - start == getIndex() - getTokenStart() && (tokenCursor & 1) == 0) {
+                    return (char) bytes.get(start + i);
+                }
+                long position = tokenCursor;
+                for (int j = 0; j < i; j++) {
+                    position = next(position);
+                }
+                return charAt(position);
+            }
+
+            private long next(long position) {
+                int width = width(bytes.get((int) (position >>> 1)));
+                if (width == 4 && (position & 1) == 0) {
+                    return position | 1;
+                }
+                return ((position >>> 1) + width) << 1;
+            }
+
+            private long previous(long position) {
+                if ((position & 1) == 1) {
+                    return position & ~1L;
+                }
+                int index = (int) (position >>> 1) - 1;
+                while (index > 0 && (bytes.get(index) & 0xC0) == 0x80) {
+                    index--;
+                }
+                return ((long) index << 1) | (width(bytes.get(index)) == 4 ? 1 : 0);
+            }
+
+            private int decode(int index) {
+                int lead = bytes.get(index) & 0xFF;
+                int width = width((byte) lead);
+                if (width == 1 || index + width > bytes.limit()) {
+                    return lead < 0x80 ? lead : 0xFFFD;
+                }
+                int codePoint = lead & (0xFF >> (width + 1));
+                for (int i = 1; i < width; i++) {
+                    codePoint = (codePoint << 6) | (bytes.get(index + i) & 0x3F);
+                }
+                return codePoint;
+            }
+
+            private static int width(byte lead) {
+                if (lead >= 0) {
+                    return 1;
+                }
+                else if ((lead & 0xE0) == 0xC0) {
+                    return 2;
+                }
+                else if ((lead & 0xF0) == 0xE0) {
+                    return 3;
+                }
+                else if ((lead & 0xF8) == 0xF0) {
+                    return 4;
+                }
+                return 1;
+            }
+
+            /**
+             * A token's literal as a range of the mapped bytes, which is only
+             * decoded when converted to a {@link String}.
+             */
+            private static final class Slice implements CharSequence {
+
+                private final ByteBuffer bytes;
+                private final long start;
+                private final long end;
+                private final int length;
+
+                private Slice(ByteBuffer bytes, long start, long end, int length) {
+                    this.bytes = bytes;
+                    this.start = start;
+                    this.end = end;
+                    this.length = length;
+                }
+
+                @Override
+                public int length() {
+                    return length;
+                }
+
+                @Override
+                public char charAt(int index) {
+                    return toString().charAt(index);
+                }
+
+                @Override
+                public CharSequence subSequence(int start, int end) {
+                    return toString().substring(start, end);
+                }
+
+                @Override
+                public String toString() {
+                    int from = (int) (start >>> 1);
+                    int to = (int) (end >>> 1);
+                    if ((end & 1) == 1) {
+                        to += 4;
+                    }
+                    ByteBuffer slice = bytes.duplicate();
+                    slice.limit(to).position(from);
+                    String decoded = StandardCharsets.UTF_8.decode(slice).toString();
+                    int offset = (int) (start & 1);
+                    return decoded.substring(offset, offset + length);
+                }
+
+            }
+
         }
 
     }
@@ -3,14 +3,36 @@ package plc.project;
 public final class ParseException extends RuntimeException {
 
     private final int index;
+    private final SourceMap sourceMap;
 
     public ParseException(String message, int index) {
+        this(message, index, null);
+    }
+
+    /**
+     * Creates an exception whose index can be converted to a line and column
+     * with the given source map, which may be {@code null}.
+     */
+    public ParseException(String message, int index, SourceMap sourceMap) {
         super(message);
         this.index = index;
+        this.sourceMap = sourceMap;
     }
 
     public int getIndex() {
         return index;
     }
 
+    public SourceMap getSourceMap() {
+        return sourceMap;
+    }
+
+    /**
+     * Returns the position of the error as {@code line:column}, or just the
+     * index if there is no source map.
+     */
+    public String getPosition() {
+        return sourceMap != null ? sourceMap.format(index) : String.valueOf(index);
+    }
+
 }
@@ -1,11 +1,14 @@
 package plc.project;
 
 import javax.swing.text.html.Option;
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -22,10 +25,111 @@ import java.util.Optional;
  */
 public final class Parser {
 
-    private final TokenStream tokens;
+    // Binary operator precedences, where 0 is not a binary operator
+    private static final int LOGICAL = 1;
+    private static final int EQUALITY = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    private static final int[] PRECEDENCE = new int[Token.Kind.values().length];
+
+    static {
+        operator(LOGICAL, Token.Kind.AND, Token.Kind.OR);
+        operator(EQUALITY, Token.Kind.LESS, Token.Kind.LESS_EQUAL, Token.Kind.GREATER,
+                Token.Kind.GREATER_EQUAL, Token.Kind.EQUAL, Token.Kind.NOT_EQUAL);
+        operator(ADDITIVE, Token.Kind.PLUS, Token.Kind.MINUS);
+        operator(MULTIPLICATIVE, Token.Kind.STAR, Token.Kind.SLASH);
+    }
+
+    private TokenStream tokens;
+    private boolean iterative = false;
+    private AstFactory factory = null;
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this.tokens = tokens instanceof TokenBuffer
+                ? new TokenStream.Buffered((TokenBuffer) tokens)
+                : new TokenStream.Listed(tokens);
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream.Buffered(tokens);
+    }
+
+    /**
+     * Creates a parser which pulls tokens from the iterator as they are
+     * needed, such as {@link Lexer#iterator()}, so the tokens are never all
+     * in memory. Lexer errors are thrown when the parser reaches them, so the
+     * error reported is whichever comes first in the input.
+     */
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new TokenStream.Iterated(tokens);
+    }
+
+    /**
+     * Creates a parser which consumes tokens from the ring as they are
+     * published by a lexer running on another thread.
+     */
+    public Parser(TokenRing tokens) {
+        this.tokens = new TokenStream.Piped(tokens);
+    }
+
+    /**
+     * Sets whether expressions and statements are parsed with an explicit
+     * stack instead of recursion, so nesting depth is limited by the heap
+     * instead of the thread's stack. The result and errors are the same
+     * either way.
+     */
+    public void setIterative(boolean iterative) {
+        this.iterative = iterative;
+    }
+
+    /**
+     * Sets the factory used to create literals, groups and binary
+     * expressions, so structurally equal ones are shared. If null (the
+     * default), every node is created new.
+     */
+    public void setFactory(AstFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns a parser over the same tokens starting at the given index, in
+     * the same mode as this one.
+     */
+    private Parser fork(int index) {
+        Parser parser = new Parser(tokens.at(index));
+        parser.iterative = iterative;
+        parser.factory = factory;
+        return parser;
+    }
+
+    /**
+     * Restarts the parser at the beginning of a new list of tokens, reusing
+     * the current token stream when it is of the same kind.
+     */
+    public void reset(List<Token> tokens) {
+        if (tokens instanceof TokenBuffer) {
+            reset((TokenBuffer) tokens);
+        }
+        else if (this.tokens instanceof TokenStream.Listed) {
+            ((TokenStream.Listed) this.tokens).reset(tokens);
+        }
+        else {
+            this.tokens = new TokenStream.Listed(tokens);
+        }
+    }
+
+    public void reset(TokenBuffer tokens) {
+        if (this.tokens instanceof TokenStream.Buffered) {
+            ((TokenStream.Buffered) this.tokens).reset(tokens);
+        }
+        else {
+            this.tokens = new TokenStream.Buffered(tokens);
+        }
     }
 
     /**
@@ -34,10 +138,159 @@ public final class Parser {
     public Ast.Source parseSource() throws ParseException {
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
-        while(peek("LET")) {
+        while(peek(Token.Kind.LET)) {
+            fields.add(parseField());
+        }
+        while(peek(Token.Kind.DEF)) {
+            methods.add(parseMethod());
+        }
+        if (tokens.has(0)) {
+            throw new ParseException("Cannot have any fields after methods", tokens.getErrorIndex());
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the {@code source} rule into a {@link FlatAst}, producing the
+     * same tree or error as {@link #parseSource()}. Nodes are written to the
+     * encoding as they are parsed, by the {@code parseFlat} methods below
+     * which follow the same rules as the methods creating {@link Ast} nodes,
+     * so no {@link Ast} is created. They are always recursive and do not use
+     * the factory (see {@link #setIterative(boolean)} and {@link
+     * #setFactory(AstFactory)}).
+     */
+    public FlatAst parseSourceFlat() throws ParseException {
+        FlatAst.Builder flat = new FlatAst.Builder(tokens.remaining());
+        int mark = flat.mark();
+        flat.push(0);
+        while(peek(Token.Kind.LET)) {
+            match(Token.Kind.LET);
+            flat.push(parseFlatDeclare(flat, FlatAst.FIELD, true));
+        }
+        flat.set(mark, flat.mark() - mark - 1);
+        while(peek(Token.Kind.DEF)) {
+            flat.push(parseFlatMethod(flat));
+        }
+        if (tokens.has(0)) {
+            throw new ParseException("Cannot have any fields after methods", tokens.getErrorIndex());
+        }
+        flat.node(FlatAst.SOURCE, mark);
+        return flat.build();
+    }
+
+    /**
+     * Parses the {@code source} rule, but only parses the signature of each
+     * method and defers its statements until {@link Ast.Method#getStatements()}
+     * is first called. An error in a body is then thrown from that call, so
+     * bodies which are never used are never parsed. Comparing or hashing the
+     * result calls it for every method, so parses every body. This requires
+     * the parser to have been created with a list of tokens.
+     *
+     * If {@code validate} is set, each body is parsed right after its method
+     * is read, which reports the same errors as {@link #parseSource()}. A body
+     * which fails to parse is parsed again as part of its method, so an
+     * {@code END} used as an identifier which was mistaken for the end of the
+     * body is not reported as an error.
+     */
+    public Ast.Source parseSourceLazy(boolean validate) throws ParseException {
+        // Fail before parsing anything if the tokens are not a list
+        tokens.at(tokens.index);
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        while(peek(Token.Kind.LET)) {
+            fields.add(parseField());
+        }
+        while(peek(Token.Kind.DEF)) {
+            int start = tokens.index;
+            Ast.Method method = parseMethod(true);
+            if (validate && !method.hasStatements()) {
+                try {
+                    method.getStatements();
+                }
+                catch (ParseException e) {
+                    tokens.index = start;
+                    method = parseMethod(false);
+                }
+            }
+            methods.add(method);
+        }
+        if (tokens.has(0)) {
+            throw new ParseException("Cannot have any fields after methods", tokens.getErrorIndex());
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the {@code source} rule with methods parsed concurrently on the
+     * common {@link ForkJoinPool}, see {@link #parseSourceParallel(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSourceParallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule, producing the same result or error as
+     * {@link #parseSource()}, but with methods parsed concurrently on the
+     * given pool. This requires the parser to have been created with a list
+     * of tokens.
+     *
+     * Fields are parsed first, then a single pass over the tokens finds the
+     * range of each method by counting {@code DO} and {@code END}, since
+     * every statement ending in {@code END} has exactly one {@code DO}. Each
+     * method is then parsed by its own parser starting at its range. Results
+     * are used in order as long as each method ends where its range does, and
+     * the first error is thrown. If the pass or a method does not line up
+     * (which only happens for invalid sources), the rest of the methods are
+     * parsed sequentially so the error is the one {@link #parseSource()}
+     * would throw.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        TokenStream scan = tokens.at(tokens.index);
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        while(peek(Token.Kind.LET)) {
             fields.add(parseField());
         }
-        while(peek("DEF")) {
+        scan.index = tokens.index;
+        List<MethodTask> tasks = new ArrayList<>();
+        while (scan.has(0) && scan.kind(0) == Token.Kind.DEF) {
+            int start = scan.index;
+            int depth = 0;
+            scan.advance();
+            while (scan.has(0) && depth >= 0 && !(depth == 1 && scan.kind(0) == Token.Kind.END)) {
+                if (scan.kind(0) == Token.Kind.DO) {
+                    depth++;
+                }
+                else if (scan.kind(0) == Token.Kind.END) {
+                    depth--;
+                }
+                scan.advance();
+            }
+            if (!scan.has(0) || depth != 1) {
+                break;
+            }
+            scan.advance();
+            tasks.add(new MethodTask(fork(start), scan.index));
+        }
+        pool.invoke(new RecursiveAction() {
+
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+
+        });
+        for (MethodTask task : tasks) {
+            if (task.exception != null) {
+                throw task.exception;
+            }
+            else if (task.parser.tokens.index != task.end) {
+                break;
+            }
+            methods.add(task.method);
+            tokens.index = task.end;
+        }
+        while(peek(Token.Kind.DEF)) {
             methods.add(parseMethod());
         }
         if (tokens.has(0)) {
@@ -46,12 +299,201 @@ public final class Parser {
         return new Ast.Source(fields, methods);
     }
 
+    /**
+     * Parses a source after an edit, reusing the {@link Ast.Field} and {@link
+     * Ast.Method} nodes of the previous source whose tokens did not change.
+     * {@code tokens} are the tokens the previous source was parsed from and
+     * {@code edited} the tokens after the edit, such as from {@link
+     * Lexer#relex(List, String, Edit)}.
+     *
+     * The tokens before the edit and after it (shifted by the change in
+     * length) which are the same in both lists are unchanged, so every field
+     * or method within them parses to the same node. Only the nodes in between are parsed
+     * again. If the previous tokens cannot be split into the previous nodes,
+     * or the new nodes do not line up with the reused ones, the whole source
+     * is parsed again, so the result and errors are always the same as
+     * {@link #parseSource()}.
+     */
+    public static Ast.Source reparse(Ast.Source source, List<Token> tokens, List<Token> edited, Edit edit) throws ParseException {
+        int[] ends = split(tokens);
+        int count = source.getFields().size() + source.getMethods().size();
+        if (ends == null || ends.length != count) {
+            return new Parser(edited).parseSource();
+        }
+        // Unchanged tokens are before or after the edit, not just equal
+        int prefix = 0;
+        while (prefix < tokens.size() && prefix < edited.size()
+                && tokens.get(prefix).getIndex() + tokens.get(prefix).getLiteral().length() <= edit.getOffset()
+                && tokens.get(prefix).equals(edited.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        int limit = Math.min(tokens.size(), edited.size()) - prefix;
+        while (suffix < limit
+                && tokens.get(tokens.size() - suffix - 1).getIndex() >= edit.getOffset() + edit.getRemoved()
+                && isShifted(tokens.get(tokens.size() - suffix - 1), edited.get(edited.size() - suffix - 1), edit.getDelta())) {
+            suffix++;
+        }
+        // Reuse the nodes [0, first) and [last, count)
+        int first = 0;
+        while (first < count && ends[first] <= prefix) {
+            first++;
+        }
+        int last = count;
+        while (last > first && start(ends, last - 1) >= tokens.size() - suffix) {
+            last--;
+        }
+        int start = start(ends, first);
+        int end = edited.size() - (tokens.size() - start(ends, last));
+        Parser parser = new Parser(edited);
+        parser.tokens.index = start;
+        List<Ast> nodes = new ArrayList<>();
+        try {
+            while (parser.tokens.index < end) {
+                if (parser.peek(Token.Kind.LET)) {
+                    nodes.add(parser.parseField());
+                }
+                else if (parser.peek(Token.Kind.DEF)) {
+                    nodes.add(parser.parseMethod());
+                }
+                else {
+                    return new Parser(edited).parseSource();
+                }
+            }
+        }
+        catch (ParseException e) {
+            return new Parser(edited).parseSource();
+        }
+        if (parser.tokens.index != end) {
+            return new Parser(edited).parseSource();
+        }
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        for (int i = 0; i < first; i++) {
+            add(node(source, i), fields, methods);
+        }
+        for (Ast node : nodes) {
+            if (!add(node, fields, methods)) {
+                return new Parser(edited).parseSource();
+            }
+        }
+        for (int i = last; i < count; i++) {
+            if (!add(node(source, i), fields, methods)) {
+                return new Parser(edited).parseSource();
+            }
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Returns the index just past the last token of each field and method
+     * in a valid source, or null if the tokens cannot be split that way.
+     */
+    private static int[] split(List<Token> tokens) {
+        int[] ends = new int[16];
+        int count = 0;
+        int index = 0;
+        while (index < tokens.size()) {
+            Token.Kind kind = tokens.get(index).getKind();
+            if (kind == Token.Kind.LET) {
+                index++;
+                while (index < tokens.size() && tokens.get(index).getKind() != Token.Kind.SEMICOLON) {
+                    index++;
+                }
+            }
+            else if (kind == Token.Kind.DEF) {
+                int depth = 0;
+                for (index++; index < tokens.size(); index++) {
+                    Token.Kind next = tokens.get(index).getKind();
+                    if (next == Token.Kind.DO) {
+                        depth++;
+                    }
+                    else if (next == Token.Kind.END && --depth <= 0) {
+                        break;
+                    }
+                }
+                if (depth != 0) {
+                    return null;
+                }
+            }
+            else {
+                return null;
+            }
+            if (index == tokens.size()) {
+                return null;
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = ++index;
+        }
+        return Arrays.copyOf(ends, count);
+    }
+
+    private static int start(int[] ends, int node) {
+        return node == 0 ? 0 : ends[node - 1];
+    }
+
+    private static boolean isShifted(Token token, Token edited, int delta) {
+        return token.getType() == edited.getType()
+                && token.getIndex() + delta == edited.getIndex()
+                && token.getLiteral().equals(edited.getLiteral());
+    }
+
+    private static Ast node(Ast.Source source, int index) {
+        int fields = source.getFields().size();
+        return index < fields ? source.getFields().get(index) : source.getMethods().get(index - fields);
+    }
+
+    /**
+     * Adds a field or method to its list, returning false if it is a field
+     * after a method.
+     */
+    private static boolean add(Ast node, List<Ast.Field> fields, List<Ast.Method> methods) {
+        if (node instanceof Ast.Field) {
+            fields.add((Ast.Field) node);
+            return methods.isEmpty();
+        }
+        methods.add((Ast.Method) node);
+        return true;
+    }
+
+    /**
+     * Parses one method for {@link #parseSourceParallel(ForkJoinPool)},
+     * keeping any exception so that errors are reported in source order.
+     */
+    private static final class MethodTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Parser parser;
+        private final int end;
+        private Ast.Method method;
+        private ParseException exception;
+
+        private MethodTask(Parser parser, int end) {
+            this.parser = parser;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                method = parser.parseMethod();
+            }
+            catch (ParseException e) {
+                exception = e;
+            }
+        }
+
+    }
+
     /**
      * Parses the {@code field} rule. This method should only be called if the
      * next tokens start a field, aka {@code LET}.
      */
     public Ast.Field parseField() throws ParseException {
-        match("LET");
+        match(Token.Kind.LET);
         Ast.Stmt.Declaration dec = parseDeclare(true);
         return new Ast.Field(dec.getName(), dec.getTypeName().get(), dec.getValue());
     }
@@ -61,40 +503,74 @@ public final class Parser {
      * next tokens start a method, aka {@code DEF}.
      */
     public Ast.Method parseMethod() throws ParseException {
-        match("DEF");
-        String name = tokens.get(0).getLiteral();
+        return parseMethod(false);
+    }
+
+    /**
+     * Parses the {@code method} rule. If {@code lazy} is set, the statements
+     * are skipped by counting {@code DO} and {@code END} and only parsed once
+     * they are requested (see {@link #parseSourceLazy(boolean)}). A body whose
+     * {@code END} cannot be found (see {@link #findEnd()}) is parsed
+     * immediately, which throws the same error as a regular parse.
+     */
+    private Ast.Method parseMethod(boolean lazy) throws ParseException {
+        match(Token.Kind.DEF);
+        String name = tokens.literal(0);
         List<String> parameters = new ArrayList<>();
         List<String> parameterTypes = new ArrayList<>();
         List<Ast.Stmt> statements = new ArrayList<>();
+        Optional<String> returnType = parseSignature(parameters, parameterTypes);
+        // Statements
+        if (lazy) {
+            int end = findEnd();
+            if (end >= 0) {
+                Parser body = fork(tokens.index);
+                tokens.index = end + 1;
+                return new Ast.Method(name, parameters, parameterTypes, returnType, () -> body.parseBody(end));
+            }
+        }
+        while (!match(Token.Kind.END)) {
+            Ast.Stmt statement = parseStatement();
+            statements.add(statement);
+        }
+        return new Ast.Method(name, parameters, parameterTypes, returnType, statements);
+    }
+
+    /**
+     * Parses the rest of the {@code method} rule up to and including the
+     * {@code DO}, after the {@code DEF}. The parameters and their types are
+     * added to the lists, and the return type is returned.
+     */
+    private Optional<String> parseSignature(List<String> parameters, List<String> parameterTypes) throws ParseException {
         Optional<String> returnType = Optional.empty();
         // Method name
         if (!match(Token.Type.IDENTIFIER)) {
             throw new ParseException("Missing an identifier in method", tokens.getErrorIndex());
         }
         // Open parethesis
-        if (!match("(")) {
+        if (!match(Token.Kind.LEFT_PAREN)) {
             throw new ParseException("Missing open parenthesis", tokens.getErrorIndex());
         }
         // Parameters
         if (peek(Token.Type.IDENTIFIER)) {
-            parameters.add(tokens.get(0).getLiteral());
+            parameters.add(tokens.literal(0));
             tokens.advance();
             // Type
             parameterTypes.add(parseType(true));
             // Additional parameters
-            while (match(",")) {
+            while (match(Token.Kind.COMMA)) {
                 // Param name
                 if (!peek(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Expected identifier", tokens.getErrorIndex());
                 }
-                parameters.add(tokens.get(0).getLiteral());
+                parameters.add(tokens.literal(0));
                 tokens.advance();
                 // Param type
                 parameterTypes.add(parseType(true));
             }
         }
         // Closing parenthesis
-        if (!match(")")) {
+        if (!match(Token.Kind.RIGHT_PAREN)) {
             throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
         }
         // Return type
@@ -103,15 +579,54 @@ public final class Parser {
             returnType = Optional.of(tempType);
         }
         // Verify do
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             throw new ParseException("Missing DO", tokens.getErrorIndex());
         }
-        // Statements
-        while (!match("END")) {
-            Ast.Stmt statement = parseStatement();
-            statements.add(statement);
+        return returnType;
+    }
+
+    /**
+     * Returns the index of the {@code END} closing the current method body,
+     * or -1 if it cannot be found by counting {@code DO} and {@code END}.
+     *
+     * Keywords may also be used as identifiers in expressions, so the count
+     * can be off. The {@code END} found is only used if it is followed by the
+     * next method or the end of the input and no {@code DEF} was skipped. In
+     * a valid source, an {@code END} found too early is an identifier, which
+     * is never followed by {@code DEF}, and one found too late skips the
+     * {@code DEF} of the next method.
+     */
+    private int findEnd() {
+        TokenStream scan = tokens.at(tokens.index);
+        int depth = 1;
+        while (scan.has(0)) {
+            if (scan.kind(0) == Token.Kind.DO) {
+                depth++;
+            }
+            else if (scan.kind(0) == Token.Kind.DEF) {
+                return -1;
+            }
+            else if (scan.kind(0) == Token.Kind.END && --depth == 0) {
+                return !scan.has(1) || scan.kind(1) == Token.Kind.DEF ? scan.index : -1;
+            }
+            scan.advance();
         }
-        return new Ast.Method(name, parameters, parameterTypes, returnType, statements);
+        return -1;
+    }
+
+    /**
+     * Parses the statements of a lazy method body, which must be closed by
+     * the {@code END} at the given index.
+     */
+    private List<Ast.Stmt> parseBody(int end) throws ParseException {
+        List<Ast.Stmt> statements = new ArrayList<>();
+        while (!match(Token.Kind.END)) {
+            statements.add(parseStatement());
+        }
+        if (tokens.index != end + 1) {
+            throw new ParseException("Expected END", tokens.get(-1).getIndex());
+        }
+        return statements;
     }
 
     /**
@@ -120,31 +635,38 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Stmt parseStatement() throws ParseException {
-        if (match("LET")) {
+        if (iterative) {
+            return parseStatementIteratively();
+        }
+        else if (match(Token.Kind.LET)) {
             return parseDeclarationStatement();
         }
-        else if (match("IF")) {
+        else if (match(Token.Kind.IF)) {
             return parseIfStatement();
         }
-        else if (match("FOR")) {
+        else if (match(Token.Kind.FOR)) {
             return parseForStatement();
         }
-        else if (match("WHILE")) {
+        else if (match(Token.Kind.WHILE)) {
             return parseWhileStatement();
         }
-        else if (match("RETURN")) {
+        else if (match(Token.Kind.RETURN)) {
             return parseReturnStatement();
         }
         else {
-            Ast.Stmt.Expression exprStmt = parseExpressionStatement();
-            if (match("=")) {
-                return parseAssignmentStatement(exprStmt);
-            }
-            if (!match(";")) {
-                throw new ParseException("Missing semicolon after expression statement", tokens.getErrorIndex());
-            }
-            return exprStmt;
+            return parseExpressionOrAssignmentStatement();
+        }
+    }
+
+    private Ast.Stmt parseExpressionOrAssignmentStatement() throws ParseException {
+        Ast.Stmt.Expression exprStmt = parseExpressionStatement();
+        if (match(Token.Kind.ASSIGN)) {
+            return parseAssignmentStatement(exprStmt);
         }
+        if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Missing semicolon after expression statement", tokens.getErrorIndex());
+        }
+        return exprStmt;
     }
 
     /**
@@ -159,7 +681,7 @@ public final class Parser {
 
     public Ast.Stmt.Assignment parseAssignmentStatement(Ast.Stmt.Expression receiver) throws ParseException {
         Ast.Expr value = parseExpression();
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw new ParseException("Missing semicolon after assignment statement", tokens.getErrorIndex());
         }
         return new Ast.Stmt.Assignment(receiver.getExpression(), value);
@@ -183,13 +705,13 @@ public final class Parser {
         if (!peek(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected an identifier", tokens.getErrorIndex());
         }
-        name = tokens.get(0).getLiteral();
+        name = tokens.literal(0);
         tokens.advance();
         // Type name
         String tempType = parseType(requireColon);
         type = tempType == null ? Optional.empty() : Optional.of(tempType);
         // Initialization
-        if (match("=")) {
+        if (match(Token.Kind.ASSIGN)) {
             Ast.Expr optionalExpr = parseExpression();
             if (optionalExpr == null) {
                 throw new ParseException("Expected an identifier", tokens.getErrorIndex());
@@ -197,7 +719,7 @@ public final class Parser {
             value = Optional.of(optionalExpr);
         }
         // Semicolon
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw new ParseException("Missing semicolon after declaration", tokens.getErrorIndex());
         }
         return new Ast.Stmt.Declaration(name, type, value);
@@ -212,15 +734,15 @@ public final class Parser {
         Ast.Expr expression = parseExpression();
         List<Ast.Stmt> thenStatements = new ArrayList<>();
         List<Ast.Stmt> elseStatements = new ArrayList<>();
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             throw new ParseException("Missing DO", tokens.getErrorIndex());
         }
-        while (!match("END") && !peek("ELSE")) {
+        while (!match(Token.Kind.END) && !peek(Token.Kind.ELSE)) {
             Ast.Stmt statement = parseStatement();
             thenStatements.add(statement);
         }
-        if (match("ELSE")) {
-            while (!peek("END")) {
+        if (match(Token.Kind.ELSE)) {
+            while (!match(Token.Kind.END)) {
                 Ast.Stmt statement = parseStatement();
                 elseStatements.add(statement);
             }
@@ -241,18 +763,18 @@ public final class Parser {
         if (!peek(Token.Type.IDENTIFIER)) {
             throw new ParseException("Expected an identifier", tokens.getErrorIndex());
         }
-        name = tokens.get(0).getLiteral();
+        name = tokens.literal(0);
         tokens.advance();
-        if (!match("IN")) {
+        if (!match(Token.Kind.IN)) {
             throw new ParseException("Missing IN", tokens.getErrorIndex());
         }
         // In Condition
         value = parseExpression();
         // Statements
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             throw new ParseException("Missing DO", tokens.getErrorIndex());
         }
-        while (!match("END")) {
+        while (!match(Token.Kind.END)) {
             Ast.Stmt statement = parseStatement();
             statements.add(statement);
         }
@@ -267,10 +789,10 @@ public final class Parser {
     public Ast.Stmt.While parseWhileStatement() throws ParseException {
         Ast.Expr expression = parseExpression();
         List<Ast.Stmt> statements = new ArrayList<>();
-        if (!match("DO")) {
+        if (!match(Token.Kind.DO)) {
             throw new ParseException("Missing DO", tokens.getErrorIndex());
         }
-        while (!match("END")) {
+        while (!match(Token.Kind.END)) {
             Ast.Stmt statement = parseStatement();
             statements.add(statement);
         }
@@ -284,7 +806,7 @@ public final class Parser {
      */
     public Ast.Stmt.Return parseReturnStatement() throws ParseException {
         Ast.Expr expression = parseExpression();
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw new ParseException("Missing semicolon after return statement", tokens.getErrorIndex());
         }
         return new Ast.Stmt.Return(expression);
@@ -294,81 +816,63 @@ public final class Parser {
      * Parses the {@code expression} rule.
      */
     public Ast.Expr parseExpression() throws ParseException {
-        return parseLogicalExpression();
+        if (iterative) {
+            return parseExpressionIteratively();
+        }
+        return parseBinaryExpression(0);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expr parseLogicalExpression() throws ParseException {
-        Ast.Expr logicExpr = parseEqualityExpression();
-        if (peek("AND") || peek("OR"))  {
-            String operator;
-            Ast.Expr rightExpr;
-            while (peek("AND") || peek("OR")) {
-                operator = tokens.get(0).getLiteral();
-                tokens.advance();
-                rightExpr = parseEqualityExpression();
-                logicExpr = new Ast.Expr.Binary(operator, logicExpr, rightExpr);
-            }
-        }
-        return logicExpr;
+        return parseBinaryExpression(0);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expr parseEqualityExpression() throws ParseException {
-        Ast.Expr addExpr = parseAdditiveExpression();
-        if (peek(">") || peek("<") || peek("<=") || peek(">=")
-                || peek("==") || peek("!=")) {
-            String operator;
-            Ast.Expr rightExpr;
-            while (peek(">") || peek("<") || peek("<=") || peek(">=")
-                    || peek("==") || peek("!=")) {
-                operator = tokens.get(0).getLiteral();
-                tokens.advance();
-                rightExpr = parseAdditiveExpression();
-                addExpr = new Ast.Expr.Binary(operator, addExpr, rightExpr);
-            }
-        }
-        return addExpr;
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expr parseAdditiveExpression() throws ParseException {
-        Ast.Expr multExpr = parseMultiplicativeExpression();
-        if (peek("+") || peek("-")) {
-            String operator;
-            Ast.Expr rightExpr;
-            while (peek("+") || peek("-")) {
-                operator = tokens.get(0).getLiteral();
-                tokens.advance();
-                rightExpr = parseMultiplicativeExpression();
-                multExpr = new Ast.Expr.Binary(operator, multExpr, rightExpr);
-            }
-        }
-        return multExpr;
+        return parseBinaryExpression(EQUALITY);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expr parseMultiplicativeExpression() throws ParseException {
-        Ast.Expr secondaryExpr = parseSecondaryExpression();
-        if (peek("*") || peek("/")) {
-            String operator;
-            Ast.Expr rightExpr;
-            while (peek("*") || peek("/")) {
-                operator = tokens.get(0).getLiteral();
-                tokens.advance();
-                rightExpr = parseSecondaryExpression();
-                secondaryExpr = new Ast.Expr.Binary(operator, secondaryExpr, rightExpr);
+        return parseBinaryExpression(ADDITIVE);
+    }
+
+    /**
+     * Parses a sequence of secondary expressions joined by binary operators
+     * with a precedence higher than {@code minimum}, which is how each of the
+     * binary expression rules above is parsed.
+     *
+     * The precedence of an operator is found from its kind in {@link
+     * #PRECEDENCE}, and an operator binds its right operand to all following
+     * operators of higher precedence. Since the right operand stops at an
+     * operator of the same precedence, all operators are left associative.
+     */
+    private Ast.Expr parseBinaryExpression(int minimum) throws ParseException {
+        Ast.Expr expression = parseSecondaryExpression();
+        while (tokens.has(0)) {
+            Token.Kind operator = tokens.kind(0);
+            int precedence = PRECEDENCE[operator.ordinal()];
+            if (precedence <= minimum) {
+                break;
             }
+            tokens.advance();
+            Ast.Expr right = parseBinaryExpression(precedence);
+            expression = binary(operator.getLiteral(), expression, right);
         }
-        return secondaryExpr;
+        return expression;
     }
 
     /**
@@ -377,14 +881,14 @@ public final class Parser {
     public Ast.Expr parseSecondaryExpression() throws ParseException {
         Ast.Expr primaryExpr = parsePrimaryExpression();
         // In a class
-        if (peek(".")) {
+        if (peek(Token.Kind.DOT)) {
             Ast.Expr.Access acc;
             Ast.Expr.Function func;
-            while (match(".")) {
+            while (match(Token.Kind.DOT)) {
                 if (!peek(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Invalid function/access name", tokens.getErrorIndex());
                 }
-                if (peek(Token.Type.IDENTIFIER, "(")) {
+                if (peek(Token.Type.IDENTIFIER, Token.Kind.LEFT_PAREN)) {
                     func = parseFunction();
                     primaryExpr = new Ast.Expr.Function(Optional.of(primaryExpr), func.getName(), func.getArguments());
                 }
@@ -405,51 +909,29 @@ public final class Parser {
      */
     public Ast.Expr parsePrimaryExpression() throws ParseException {
         // NIL
-        if (peek("NIL")) {
+        if (peek(Token.Kind.NIL)) {
             tokens.advance();
-            return new Ast.Expr.Literal(null);
+            return literal(null);
         }
         // Literal - Boolean
-        else if (peek("TRUE") || peek("FALSE")) {
-            String literal = tokens.get(0).getLiteral();
-            tokens.advance();
-            return new Ast.Expr.Literal(Boolean.valueOf(literal));
-        }
-        // Literal - Integer
-        else if (peek(Token.Type.INTEGER)) {
-            String literal = tokens.get(0).getLiteral();
-            tokens.advance();
-            return new Ast.Expr.Literal((new BigInteger(literal)));
-        }
-        // Literal - Decimal
-        else if (peek(Token.Type.DECIMAL)) {
-            String literal = tokens.get(0).getLiteral();
+        else if (peek(Token.Kind.TRUE) || peek(Token.Kind.FALSE)) {
+            String literal = tokens.literal(0);
             tokens.advance();
-            return new Ast.Expr.Literal((new BigDecimal(literal)));
+            return literal(Boolean.valueOf(literal));
         }
-        // Literal - Character
-        else if (peek(Token.Type.CHARACTER)) {
-            String charString = tokens.get(0).getLiteral();
-            charString = charString.substring(1, charString.length() - 1);
-            charString = replaceEscapes(charString);
+        // Literal - Integer, Decimal, Character, or String
+        else if (peek(Token.Type.INTEGER) || peek(Token.Type.DECIMAL) || peek(Token.Type.CHARACTER) || peek(Token.Type.STRING)) {
+            Object value = tokens.value(0);
             tokens.advance();
-            return new Ast.Expr.Literal(charString.charAt(0));
-        }
-        // Literal - String
-        else if (peek(Token.Type.STRING)) {
-            String strString = tokens.get(0).getLiteral();
-            strString = strString.substring(1, strString.length() - 1);
-            strString = replaceEscapes(strString);
-            tokens.advance();
-            return new Ast.Expr.Literal(strString);
+            return literal(value);
         }
         // Group
-        else if (match("(")) {
+        else if (match(Token.Kind.LEFT_PAREN)) {
             return parseGroup();
         }
         // Access or Function
         else if (peek(Token.Type.IDENTIFIER)) {
-            if (peek(Token.Type.IDENTIFIER, "(")) {
+            if (peek(Token.Type.IDENTIFIER, Token.Kind.LEFT_PAREN)) {
                 return parseFunction();
             }
             return parseAccess();
@@ -458,23 +940,23 @@ public final class Parser {
     }
 
     public Ast.Expr.Access parseAccess() throws ParseException {
-        String name = tokens.get(0).getLiteral();
+        String name = tokens.literal(0);
         tokens.advance();
         return new Ast.Expr.Access(Optional.empty(), name);
     }
 
     public Ast.Expr.Function parseFunction() throws ParseException {
-        String name = tokens.get(0).getLiteral();
+        String name = tokens.literal(0);
         tokens.advance();
         tokens.advance();
         List<Ast.Expr> arguments = new ArrayList<>();
-        if (!peek(")") && tokens.has(1)) {
+        if (!peek(Token.Kind.RIGHT_PAREN) && tokens.has(1)) {
             arguments.add(parseExpression());
         }
-        while (match(",")) {
+        while (match(Token.Kind.COMMA)) {
             arguments.add(parseExpression());
         }
-        if (!match(")")) {
+        if (!match(Token.Kind.RIGHT_PAREN)) {
             throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
         }
         return new Ast.Expr.Function(Optional.empty(), name, arguments);
@@ -482,84 +964,597 @@ public final class Parser {
 
     public Ast.Expr.Group parseGroup() throws ParseException {
         Ast.Expr expression = parseExpression();
-        if (!match(")")) {
+        if (!match(Token.Kind.RIGHT_PAREN)) {
             throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
         }
-        return new Ast.Expr.Group(expression);
+        return group(expression);
+    }
+
+    private Ast.Expr.Literal literal(Object value) {
+        return factory != null ? factory.literal(value) : new Ast.Expr.Literal(value);
+    }
+
+    private Ast.Expr.Group group(Ast.Expr expression) {
+        return factory != null ? factory.group(expression) : new Ast.Expr.Group(expression);
+    }
+
+    private Ast.Expr.Binary binary(String operator, Ast.Expr left, Ast.Expr right) {
+        return factory != null ? factory.binary(operator, left, right) : new Ast.Expr.Binary(operator, left, right);
     }
 
     public String parseType(boolean required) throws ParseException {
         String type = null;
         if (required) {
-            if (!match(":")) {
+            if (!match(Token.Kind.COLON)) {
                 throw new ParseException("Missing semicolon", tokens.getErrorIndex());
             }
             if (!peek(Token.Type.IDENTIFIER)) {
                 throw new ParseException("Expected identifier as type", tokens.getErrorIndex());
             }
-            type = tokens.get(0).getLiteral();
+            type = tokens.literal(0);
             tokens.advance();
         }
         else {
-            if (match(":")) {
+            if (match(Token.Kind.COLON)) {
                 if (!peek(Token.Type.IDENTIFIER)) {
                     throw new ParseException("Expected an identifer as type", tokens.getErrorIndex());
                 }
-                type = tokens.get(0).getLiteral();
+                type = tokens.literal(0);
                 tokens.advance();
             }
         }
         return type;
     }
 
-    public String replaceEscapes(String str) {
-        str = str.replace("\\\b", "\b");
-        str = str.replace("\\n", "\n");
-        str = str.replace("\\\r", "\r");
-        str = str.replace("\\\t", "\t");
-        str = str.replace("\\\'", "\'");
-        str = str.replace("\\\"", "\"");
-        str = str.replace("\\\\", "\\");
-        return str;
+    /**
+     * Parses the {@code method} rule into the flat encoding, see {@link
+     * #parseSourceFlat()}. This method should only be called if the next
+     * tokens start a method, aka {@code DEF}.
+     */
+    private int parseFlatMethod(FlatAst.Builder flat) throws ParseException {
+        match(Token.Kind.DEF);
+        String name = tokens.literal(0);
+        List<String> parameters = new ArrayList<>();
+        List<String> parameterTypes = new ArrayList<>();
+        Optional<String> returnType = parseSignature(parameters, parameterTypes);
+        int mark = flat.mark();
+        flat.push(flat.constant(name));
+        flat.push(returnType.isPresent() ? flat.constant(returnType.get()) : -1);
+        flat.push(parameters.size());
+        for (int i = 0; i < parameters.size(); i++) {
+            flat.push(flat.constant(parameters.get(i)));
+            flat.push(flat.constant(parameterTypes.get(i)));
+        }
+        parseFlatBlock(flat);
+        return flat.node(FlatAst.METHOD, mark);
     }
 
     /**
-     * As in the lexer, returns {@code true} if the current sequence of tokens
-     * matches the given patterns. Unlike the lexer, the pattern is not a regex;
-     * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
-     *
-     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * Pushes the statements up to and including the next {@code END}.
      */
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!tokens.has(i)) {
-                return false;
-            }
-            else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) {
-                    return false;
-                }
-            }
-            else if (patterns[i] instanceof  String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) {
-                    return false;
-                }
-            }
-            else {
-                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
-            }
+    private void parseFlatBlock(FlatAst.Builder flat) throws ParseException {
+        while (!match(Token.Kind.END)) {
+            flat.push(parseFlatStatement(flat));
         }
-        return true;
     }
 
     /**
-     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
-     * and advances the token stream.
+     * Parses the {@code statement} rule into the flat encoding, like {@link
+     * #parseStatement()}.
      */
-    private boolean match(Object... patterns) {
+    private int parseFlatStatement(FlatAst.Builder flat) throws ParseException {
+        int mark = flat.mark();
+        if (match(Token.Kind.LET)) {
+            return parseFlatDeclare(flat, FlatAst.DECLARATION, false);
+        }
+        else if (match(Token.Kind.IF)) {
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.DO)) {
+                throw new ParseException("Missing DO", tokens.getErrorIndex());
+            }
+            flat.push(0);
+            while (!match(Token.Kind.END) && !peek(Token.Kind.ELSE)) {
+                flat.push(parseFlatStatement(flat));
+            }
+            flat.set(mark + 1, flat.mark() - mark - 2);
+            if (match(Token.Kind.ELSE)) {
+                parseFlatBlock(flat);
+            }
+            return flat.node(FlatAst.IF, mark);
+        }
+        else if (match(Token.Kind.FOR)) {
+            if (!peek(Token.Type.IDENTIFIER)) {
+                throw new ParseException("Expected an identifier", tokens.getErrorIndex());
+            }
+            flat.push(flat.constant(tokens.literal(0)));
+            tokens.advance();
+            if (!match(Token.Kind.IN)) {
+                throw new ParseException("Missing IN", tokens.getErrorIndex());
+            }
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.DO)) {
+                throw new ParseException("Missing DO", tokens.getErrorIndex());
+            }
+            parseFlatBlock(flat);
+            return flat.node(FlatAst.FOR, mark);
+        }
+        else if (match(Token.Kind.WHILE)) {
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.DO)) {
+                throw new ParseException("Missing DO", tokens.getErrorIndex());
+            }
+            parseFlatBlock(flat);
+            return flat.node(FlatAst.WHILE, mark);
+        }
+        else if (match(Token.Kind.RETURN)) {
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.SEMICOLON)) {
+                throw new ParseException("Missing semicolon after return statement", tokens.getErrorIndex());
+            }
+            return flat.node(FlatAst.RETURN, mark);
+        }
+        flat.push(parseFlatExpression(flat, 0));
+        if (match(Token.Kind.ASSIGN)) {
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.SEMICOLON)) {
+                throw new ParseException("Missing semicolon after assignment statement", tokens.getErrorIndex());
+            }
+            return flat.node(FlatAst.ASSIGNMENT, mark);
+        }
+        if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Missing semicolon after expression statement", tokens.getErrorIndex());
+        }
+        return flat.node(FlatAst.EXPRESSION, mark);
+    }
+
+    /**
+     * Parses a field or declaration statement into the flat encoding, like
+     * {@link #parseDeclare(boolean)}. Both kinds have the same operands.
+     */
+    private int parseFlatDeclare(FlatAst.Builder flat, int kind, boolean requireColon) throws ParseException {
+        int mark = flat.mark();
+        if (!peek(Token.Type.IDENTIFIER)) {
+            throw new ParseException("Expected an identifier", tokens.getErrorIndex());
+        }
+        flat.push(flat.constant(tokens.literal(0)));
+        tokens.advance();
+        String type = parseType(requireColon);
+        flat.push(type == null ? -1 : flat.constant(type));
+        flat.push(match(Token.Kind.ASSIGN) ? parseFlatExpression(flat, 0) : -1);
+        if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Missing semicolon after declaration", tokens.getErrorIndex());
+        }
+        return flat.node(kind, mark);
+    }
+
+    /**
+     * Parses binary expressions into the flat encoding, like {@link
+     * #parseBinaryExpression(int)}.
+     */
+    private int parseFlatExpression(FlatAst.Builder flat, int minimum) throws ParseException {
+        int expression = parseFlatSecondaryExpression(flat);
+        while (tokens.has(0)) {
+            Token.Kind operator = tokens.kind(0);
+            int precedence = PRECEDENCE[operator.ordinal()];
+            if (precedence <= minimum) {
+                break;
+            }
+            tokens.advance();
+            int right = parseFlatExpression(flat, precedence);
+            int mark = flat.mark();
+            flat.push(flat.constant(operator.getLiteral()));
+            flat.push(expression);
+            flat.push(right);
+            expression = flat.node(FlatAst.BINARY, mark);
+        }
+        return expression;
+    }
+
+    private int parseFlatSecondaryExpression(FlatAst.Builder flat) throws ParseException {
+        int expression = parseFlatPrimaryExpression(flat);
+        while (match(Token.Kind.DOT)) {
+            if (!peek(Token.Type.IDENTIFIER)) {
+                throw new ParseException("Invalid function/access name", tokens.getErrorIndex());
+            }
+            expression = parseFlatAccessOrFunction(flat, expression);
+        }
+        return expression;
+    }
+
+    private int parseFlatPrimaryExpression(FlatAst.Builder flat) throws ParseException {
+        int mark = flat.mark();
+        // NIL
+        if (peek(Token.Kind.NIL)) {
+            tokens.advance();
+            flat.push(flat.constant(null));
+            return flat.node(FlatAst.LITERAL, mark);
+        }
+        // Literal - Boolean
+        else if (peek(Token.Kind.TRUE) || peek(Token.Kind.FALSE)) {
+            String literal = tokens.literal(0);
+            tokens.advance();
+            flat.push(flat.constant(Boolean.valueOf(literal)));
+            return flat.node(FlatAst.LITERAL, mark);
+        }
+        // Literal - Integer, Decimal, Character, or String
+        else if (peek(Token.Type.INTEGER) || peek(Token.Type.DECIMAL) || peek(Token.Type.CHARACTER) || peek(Token.Type.STRING)) {
+            Object value = tokens.value(0);
+            tokens.advance();
+            flat.push(flat.constant(value));
+            return flat.node(FlatAst.LITERAL, mark);
+        }
+        // Group
+        else if (match(Token.Kind.LEFT_PAREN)) {
+            flat.push(parseFlatExpression(flat, 0));
+            if (!match(Token.Kind.RIGHT_PAREN)) {
+                throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
+            }
+            return flat.node(FlatAst.GROUP, mark);
+        }
+        // Access or Function
+        else if (peek(Token.Type.IDENTIFIER)) {
+            return parseFlatAccessOrFunction(flat, -1);
+        }
+        throw new ParseException("No valid expression was found", tokens.getErrorIndex());
+    }
+
+    /**
+     * Parses an access or function call on the given receiver node, or -1
+     * for none, like {@link #parseAccess()} and {@link #parseFunction()}.
+     */
+    private int parseFlatAccessOrFunction(FlatAst.Builder flat, int receiver) throws ParseException {
+        int mark = flat.mark();
+        flat.push(receiver);
+        flat.push(flat.constant(tokens.literal(0)));
+        if (!peek(Token.Type.IDENTIFIER, Token.Kind.LEFT_PAREN)) {
+            tokens.advance();
+            return flat.node(FlatAst.ACCESS, mark);
+        }
+        tokens.advance();
+        tokens.advance();
+        if (!peek(Token.Kind.RIGHT_PAREN) && tokens.has(1)) {
+            flat.push(parseFlatExpression(flat, 0));
+        }
+        while (match(Token.Kind.COMMA)) {
+            flat.push(parseFlatExpression(flat, 0));
+        }
+        if (!match(Token.Kind.RIGHT_PAREN)) {
+            throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
+        }
+        return flat.node(FlatAst.FUNCTION, mark);
+    }
+
+    /**
+     * Parses the {@code statement} rule like {@link #parseStatement()}, but
+     * keeps the enclosing {@code IF}, {@code FOR} and {@code WHILE} blocks on
+     * an explicit stack. Each iteration either closes the innermost block,
+     * opens a new one, or parses a statement without a block, which is then
+     * added to the innermost block.
+     */
+    private Ast.Stmt parseStatementIteratively() throws ParseException {
+        List<Block> blocks = new ArrayList<>();
+        while (true) {
+            Block block = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+            Ast.Stmt statement;
+            if (block != null && block.type == Token.Kind.IF && !block.inElse && (match(Token.Kind.END) || peek(Token.Kind.ELSE))) {
+                if (match(Token.Kind.ELSE)) {
+                    block.inElse = true;
+                    continue;
+                }
+                statement = blocks.remove(blocks.size() - 1).close();
+            }
+            else if (block != null && (block.type != Token.Kind.IF || block.inElse) && match(Token.Kind.END)) {
+                statement = blocks.remove(blocks.size() - 1).close();
+            }
+            else if (match(Token.Kind.IF)) {
+                open(blocks, new Block(Token.Kind.IF, null, parseExpression()));
+                continue;
+            }
+            else if (match(Token.Kind.FOR)) {
+                if (!peek(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Expected an identifier", tokens.getErrorIndex());
+                }
+                String name = tokens.literal(0);
+                tokens.advance();
+                if (!match(Token.Kind.IN)) {
+                    throw new ParseException("Missing IN", tokens.getErrorIndex());
+                }
+                open(blocks, new Block(Token.Kind.FOR, name, parseExpression()));
+                continue;
+            }
+            else if (match(Token.Kind.WHILE)) {
+                open(blocks, new Block(Token.Kind.WHILE, null, parseExpression()));
+                continue;
+            }
+            else if (match(Token.Kind.LET)) {
+                statement = parseDeclarationStatement();
+            }
+            else if (match(Token.Kind.RETURN)) {
+                statement = parseReturnStatement();
+            }
+            else {
+                statement = parseExpressionOrAssignmentStatement();
+            }
+            if (blocks.isEmpty()) {
+                return statement;
+            }
+            blocks.get(blocks.size() - 1).add(statement);
+        }
+    }
+
+    /**
+     * Pushes a block once its header has been parsed, which must be followed
+     * by {@code DO}.
+     */
+    private void open(List<Block> blocks, Block block) throws ParseException {
+        if (!match(Token.Kind.DO)) {
+            throw new ParseException("Missing DO", tokens.getErrorIndex());
+        }
+        blocks.add(block);
+    }
+
+    /**
+     * An {@code IF}, {@code FOR} or {@code WHILE} statement whose block is
+     * being parsed by {@link #parseStatementIteratively()}.
+     */
+    private static final class Block {
+
+        private final Token.Kind type;
+        private final String name;
+        private final Ast.Expr expression;
+        private final List<Ast.Stmt> statements = new ArrayList<>();
+        private final List<Ast.Stmt> elseStatements = new ArrayList<>();
+        private boolean inElse = false;
+
+        private Block(Token.Kind type, String name, Ast.Expr expression) {
+            this.type = type;
+            this.name = name;
+            this.expression = expression;
+        }
+
+        private void add(Ast.Stmt statement) {
+            (inElse ? elseStatements : statements).add(statement);
+        }
+
+        private Ast.Stmt close() {
+            if (type == Token.Kind.IF) {
+                return new Ast.Stmt.If(expression, statements, elseStatements);
+            }
+            else if (type == Token.Kind.FOR) {
+                return new Ast.Stmt.For(name, expression, statements);
+            }
+            return new Ast.Stmt.While(expression, statements);
+        }
+
+    }
+
+    /**
+     * Parses the {@code expression} rule like {@link #parseExpression()}, but
+     * with explicit stacks instead of recursion. Binary operators are
+     * combined by precedence with an operator and operand stack (the
+     * shunting-yard algorithm), which builds the same left associative trees
+     * as {@link #parseBinaryExpression(int)}. Groups and function arguments
+     * start a nested expression by pushing a frame, and the frame decides
+     * what happens once that expression is complete.
+     */
+    private Ast.Expr parseExpressionIteratively() throws ParseException {
+        List<Frame> frames = new ArrayList<>();
+        List<Token.Kind> operators = new ArrayList<>();
+        List<Ast.Expr> operands = new ArrayList<>();
+        frames.add(new Frame(operators.size()));
+        Ast.Expr result = null;
+        int state = OPERAND;
+        while (true) {
+            if (state == OPERAND) {
+                // primary-expression
+                if (peek(Token.Kind.NIL)) {
+                    tokens.advance();
+                    result = literal(null);
+                    state = SECONDARY;
+                }
+                else if (peek(Token.Kind.TRUE) || peek(Token.Kind.FALSE)) {
+                    result = literal(Boolean.valueOf(tokens.literal(0)));
+                    tokens.advance();
+                    state = SECONDARY;
+                }
+                else if (peek(Token.Type.INTEGER) || peek(Token.Type.DECIMAL) || peek(Token.Type.CHARACTER) || peek(Token.Type.STRING)) {
+                    result = literal(tokens.value(0));
+                    tokens.advance();
+                    state = SECONDARY;
+                }
+                else if (match(Token.Kind.LEFT_PAREN)) {
+                    frames.add(new Frame(null, null, null));
+                    frames.add(new Frame(operators.size()));
+                }
+                else if (peek(Token.Type.IDENTIFIER, Token.Kind.LEFT_PAREN)) {
+                    state = startFunction(frames, operators, Optional.empty());
+                }
+                else if (peek(Token.Type.IDENTIFIER)) {
+                    result = parseAccess();
+                    state = SECONDARY;
+                }
+                else {
+                    throw new ParseException("No valid expression was found", tokens.getErrorIndex());
+                }
+            }
+            else if (state == SECONDARY) {
+                // secondary-expression, where result is the receiver
+                if (!match(Token.Kind.DOT)) {
+                    state = BINARY;
+                }
+                else if (!peek(Token.Type.IDENTIFIER)) {
+                    throw new ParseException("Invalid function/access name", tokens.getErrorIndex());
+                }
+                else if (peek(Token.Type.IDENTIFIER, Token.Kind.LEFT_PAREN)) {
+                    state = startFunction(frames, operators, Optional.of(result));
+                }
+                else {
+                    result = new Ast.Expr.Access(Optional.of(result), tokens.literal(0));
+                    tokens.advance();
+                }
+            }
+            else if (state == BINARY) {
+                // result is an operand of the innermost expression
+                Frame frame = frames.get(frames.size() - 1);
+                operands.add(result);
+                int precedence = tokens.has(0) ? PRECEDENCE[tokens.kind(0).ordinal()] : 0;
+                while (operators.size() > frame.operators
+                        && PRECEDENCE[operators.get(operators.size() - 1).ordinal()] >= Math.max(precedence, 1)) {
+                    Token.Kind operator = operators.remove(operators.size() - 1);
+                    Ast.Expr right = operands.remove(operands.size() - 1);
+                    Ast.Expr left = operands.remove(operands.size() - 1);
+                    operands.add(binary(operator.getLiteral(), left, right));
+                }
+                if (precedence > 0) {
+                    operators.add(tokens.kind(0));
+                    tokens.advance();
+                    state = OPERAND;
+                    continue;
+                }
+                result = operands.remove(operands.size() - 1);
+                frames.remove(frames.size() - 1);
+                if (frames.isEmpty()) {
+                    return result;
+                }
+                state = frames.get(frames.size() - 1).arguments == null ? GROUP : ARGUMENT;
+            }
+            else if (state == GROUP) {
+                frames.remove(frames.size() - 1);
+                if (!match(Token.Kind.RIGHT_PAREN)) {
+                    throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
+                }
+                result = group(result);
+                state = SECONDARY;
+            }
+            else {
+                // ARGUMENT, where result is the next argument if there is one
+                Frame frame = frames.get(frames.size() - 1);
+                if (state == ARGUMENT) {
+                    frame.arguments.add(result);
+                }
+                if (match(Token.Kind.COMMA)) {
+                    frames.add(new Frame(operators.size()));
+                    state = OPERAND;
+                    continue;
+                }
+                frames.remove(frames.size() - 1);
+                if (!match(Token.Kind.RIGHT_PAREN)) {
+                    throw new ParseException("Missing ending parenthesis", tokens.getErrorIndex());
+                }
+                result = new Ast.Expr.Function(frame.receiver, frame.name, frame.arguments);
+                state = SECONDARY;
+            }
+        }
+    }
+
+    /**
+     * Consumes the name and opening parenthesis of a function and pushes its
+     * frame, returning the next state. The first argument is only parsed if
+     * the next token is not {@code )} and is not the last token, as in {@link
+     * #parseFunction()}.
+     */
+    private int startFunction(List<Frame> frames, List<Token.Kind> operators, Optional<Ast.Expr> receiver) {
+        String name = tokens.literal(0);
+        tokens.advance();
+        tokens.advance();
+        frames.add(new Frame(receiver, name, new ArrayList<>()));
+        if (!peek(Token.Kind.RIGHT_PAREN) && tokens.has(1)) {
+            frames.add(new Frame(operators.size()));
+            return OPERAND;
+        }
+        return ARGUMENTS;
+    }
+
+    // States of parseExpressionIteratively
+    private static final int OPERAND = 0;
+    private static final int SECONDARY = 1;
+    private static final int BINARY = 2;
+    private static final int GROUP = 3;
+    private static final int ARGUMENT = 4;
+    private static final int ARGUMENTS = 5;
+
+    /**
+     * A frame of {@link #parseExpressionIteratively()}, which is either an
+     * expression whose operators start at the given index of the operator
+     * stack, a group (with no arguments), or a function call.
+     */
+    private static final class Frame {
+
+        private final int operators;
+        private final Optional<Ast.Expr> receiver;
+        private final String name;
+        private final List<Ast.Expr> arguments;
+
+        private Frame(int operators) {
+            this.operators = operators;
+            this.receiver = null;
+            this.name = null;
+            this.arguments = null;
+        }
+
+        private Frame(Optional<Ast.Expr> receiver, String name, List<Ast.Expr> arguments) {
+            this.operators = -1;
+            this.receiver = receiver;
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+    }
+
+    /**
+     * Registers binary operators with the given precedence. The operator kinds
+     * must have a constant literal, which is the operator of the {@link
+     * Ast.Expr.Binary}.
+     */
+    private static void operator(int precedence, Token.Kind... kinds) {
+        for (Token.Kind kind : kinds) {
+            PRECEDENCE[kind.ordinal()] = precedence;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the current sequence of tokens matches the given
+     * patterns. Each pattern is either a {@link Token.Kind} or {@link
+     * Token.Type}, which matches if the token's kind or type is the same, or a
+     * {@link String}, which matches if the token's literal is the same.
+     *
+     * In other words, {@code Token(IDENTIFIER, "LET")} is matched by {@code
+     * peek(Token.Kind.LET)}, {@code peek(Token.Type.IDENTIFIER)} and {@code
+     * peek("LET")}. Keywords and operators are matched by kind, which avoids
+     * comparing literals.
+     */
+    private boolean peek(Object... patterns) {
+        for (int i = 0; i < patterns.length; i++) {
+            if (!tokens.has(i)) {
+                return false;
+            }
+            else if (patterns[i] instanceof Token.Kind) {
+                if (patterns[i] != tokens.kind(i)) {
+                    return false;
+                }
+            }
+            else if (patterns[i] instanceof Token.Type) {
+                if (patterns[i] != tokens.type(i)) {
+                    return false;
+                }
+            }
+            else if (patterns[i] instanceof  String) {
+                if (!tokens.matches(i, (String) patterns[i])) {
+                    return false;
+                }
+            }
+            else {
+                throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(Object...)} is true and advances the
+     * token stream.
+     */
+    private boolean match(Object... patterns) {
         boolean peek = peek(patterns);
         if (peek) {
             for (int i = 0; i < patterns.length; i++) {
@@ -569,29 +1564,48 @@ public final class Parser {
         return peek;
     }
 
-    private static final class TokenStream {
+    /**
+     * Maintains the current index into the tokens being parsed, which are
+     * either a {@code List<Token>} or the arrays of a {@link TokenBuffer}.
+     */
+    private static abstract class TokenStream {
 
-        private final List<Token> tokens;
         private int index = 0;
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
-        }
-
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
-        }
+        public abstract boolean has(int offset);
 
         /**
          * Gets the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        public abstract Token get(int offset);
+
+        public abstract Token.Type type(int offset);
+
+        public abstract Token.Kind kind(int offset);
+
+        public abstract String literal(int offset);
+
+        /**
+         * Returns the decoded value of the literal token at index + offset.
+         */
+        public abstract Object value(int offset);
+
+        /**
+         * Returns true if the literal of the token at index + offset equals
+         * the given string.
+         */
+        public boolean matches(int offset, String literal) {
+            return literal.equals(literal(offset));
         }
 
+        /**
+         * Returns the index just past the end of the token at index + offset.
+         */
+        protected abstract int end(int offset);
+
         /**
          * Advances to the next token, incrementing the index.
          */
@@ -599,13 +1613,286 @@ public final class Parser {
             index++;
         }
 
+        /**
+         * Returns a new stream over the same tokens starting at the given
+         * index, which is only supported for lists of tokens.
+         */
+        public TokenStream at(int index) {
+            throw new IllegalStateException("Parsing from an offset requires a list of tokens.");
+        }
+
+        /**
+         * Returns the number of tokens from the index on, or -1 if it is not
+         * known ahead of time.
+         */
+        public int remaining() {
+            return -1;
+        }
+
         public int getErrorIndex() {
             if (has(0)) {
                 return get(0).getIndex();
             }
-            return get(-1).getIndex() + get(-1).getLiteral().length();
+            return end(-1);
+        }
+
+        private static final class Listed extends TokenStream {
+
+            private List<Token> tokens;
+
+            private Listed(List<Token> tokens) {
+                this.tokens = tokens;
+            }
+
+            private void reset(List<Token> tokens) {
+                this.tokens = tokens;
+                super.index = 0;
+            }
+
+            @Override
+            public TokenStream at(int index) {
+                TokenStream stream = new Listed(tokens);
+                stream.index = index;
+                return stream;
+            }
+
+            @Override
+            public boolean has(int offset) {
+                return super.index + offset < tokens.size();
+            }
+
+            @Override
+            public int remaining() {
+                return tokens.size() - super.index;
+            }
+
+            @Override
+            public Token get(int offset) {
+                return tokens.get(super.index + offset);
+            }
+
+            @Override
+            public Token.Type type(int offset) {
+                return get(offset).getType();
+            }
+
+            @Override
+            public Token.Kind kind(int offset) {
+                return get(offset).getKind();
+            }
+
+            @Override
+            public String literal(int offset) {
+                return get(offset).getLiteral();
+            }
+
+            @Override
+            public Object value(int offset) {
+                return get(offset).getValue();
+            }
+
+            @Override
+            protected int end(int offset) {
+                return get(offset).getIndex() + get(offset).getLiteral().length();
+            }
+
+        }
+
+        private static final class Buffered extends TokenStream {
+
+            private TokenBuffer tokens;
+
+            private Buffered(TokenBuffer tokens) {
+                this.tokens = tokens;
+            }
+
+            private void reset(TokenBuffer tokens) {
+                this.tokens = tokens;
+                super.index = 0;
+            }
+
+            @Override
+            public TokenStream at(int index) {
+                TokenStream stream = new Buffered(tokens);
+                stream.index = index;
+                return stream;
+            }
+
+            @Override
+            public boolean has(int offset) {
+                return super.index + offset < tokens.size();
+            }
+
+            @Override
+            public int remaining() {
+                return tokens.size() - super.index;
+            }
+
+            @Override
+            public Token get(int offset) {
+                return tokens.get(super.index + offset);
+            }
+
+            @Override
+            public Token.Type type(int offset) {
+                return tokens.getType(super.index + offset);
+            }
+
+            @Override
+            public Token.Kind kind(int offset) {
+                return tokens.getKind(super.index + offset);
+            }
+
+            @Override
+            public String literal(int offset) {
+                return tokens.getLiteral(super.index + offset);
+            }
+
+            @Override
+            public Object value(int offset) {
+                return tokens.getValue(super.index + offset);
+            }
+
+            @Override
+            public boolean matches(int offset, String literal) {
+                return tokens.matches(super.index + offset, literal);
+            }
+
+            @Override
+            protected int end(int offset) {
+                return tokens.getIndex(super.index + offset) + tokens.getLength(super.index + offset);
+            }
+
+        }
+
+        /**
+         * Pulls tokens from an iterator into a ring of four tokens, which holds
+         * the previous token (for {@link #getErrorIndex()}), the current token
+         * and the two tokens of lookahead the grammar needs.
+         */
+        private static final class Iterated extends TokenStream {
+
+            private static final int LOOKAHEAD = 2;
+
+            private final Iterator<Token> iterator;
+            private final Token[] ring = new Token[4];
+            private int pulled = 0;
+
+            private Iterated(Iterator<Token> iterator) {
+                this.iterator = iterator;
+            }
+
+            @Override
+            public boolean has(int offset) {
+                int position = position(offset);
+                while (pulled <= position && iterator.hasNext()) {
+                    ring[pulled++ & 3] = iterator.next();
+                }
+                return position < pulled;
+            }
+
+            @Override
+            public Token get(int offset) {
+                if (!has(offset)) {
+                    throw new IndexOutOfBoundsException("Index " + (super.index + offset) + " is past the end of the tokens.");
+                }
+                return ring[position(offset) & 3];
+            }
+
+            private int position(int offset) {
+                if (offset < -1 || offset > LOOKAHEAD || super.index + offset < 0) {
+                    throw new IllegalArgumentException("Offset " + offset + " is outside the lookahead of the parser.");
+                }
+                return super.index + offset;
+            }
+
+            @Override
+            public Token.Type type(int offset) {
+                return get(offset).getType();
+            }
+
+            @Override
+            public Token.Kind kind(int offset) {
+                return get(offset).getKind();
+            }
+
+            @Override
+            public String literal(int offset) {
+                return get(offset).getLiteral();
+            }
+
+            @Override
+            public Object value(int offset) {
+                return get(offset).getValue();
+            }
+
+            @Override
+            protected int end(int offset) {
+                return get(offset).getIndex() + get(offset).getLiteral().length();
+            }
+
+        }
+
+        /**
+         * Reads tokens from a {@link TokenRing}. Tokens before the previous one
+         * are released as the parser advances, so the previous token is still
+         * available for {@link #getErrorIndex()} at the end of the input.
+         */
+        private static final class Piped extends TokenStream {
+
+            private final TokenRing ring;
+
+            private Piped(TokenRing ring) {
+                this.ring = ring;
+            }
+
+            @Override
+            public boolean has(int offset) {
+                return ring.get(super.index + offset) != null;
+            }
+
+            @Override
+            public Token get(int offset) {
+                Token token = ring.get(super.index + offset);
+                if (token == null) {
+                    throw new IndexOutOfBoundsException("Index " + (super.index + offset) + " is past the end of the tokens.");
+                }
+                return token;
+            }
+
+            @Override
+            public Token.Type type(int offset) {
+                return get(offset).getType();
+            }
+
+            @Override
+            public Token.Kind kind(int offset) {
+                return get(offset).getKind();
+            }
+
+            @Override
+            public String literal(int offset) {
+                return get(offset).getLiteral();
+            }
+
+            @Override
+            public Object value(int offset) {
+                return get(offset).getValue();
+            }
+
+            @Override
+            protected int end(int offset) {
+                return get(offset).getIndex() + get(offset).getLiteral().length();
+            }
+
+            @Override
+            public void advance() {
+                super.advance();
+                ring.release(super.index - 1);
+            }
+
         }
 
     }
 
-}
\ No newline at end of file
+}
@@ -1,16 +1,29 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Function;
 
+/**
+ * Variables are keyed by name and functions by name and then arity. Names are
+ * interned by the {@link SymbolTable} of the lexer, so the {@link String}
+ * keys are found by their cached hash and an identity check. Scopes are not
+ * keyed on symbol ids since ids belong to one table, while a scope holds
+ * names from several (and built-ins from none), so an id would have to be
+ * looked up by name for each access. Locals are resolved to slots by the
+ * {@link Analyzer} instead.
+ */
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    private Map<String, Environment.Variable> variables = Collections.emptyMap();
+    private Map<String, Environment.Function[]> functions = Collections.emptyMap();
+    private Environment.PlcObject[] slots;
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -29,6 +42,9 @@ public final class Scope {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, value);
+            if (variables.isEmpty()) {
+                variables = new HashMap<>();
+            }
             variables.put(variable.getName(), variable);
             return variables.get(name);
         }
@@ -53,18 +69,39 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
+        int arity = parameterTypes.size();
+        if (getFunction(name, arity) != null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
         } else {
             Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
+            if (functions.isEmpty()) {
+                functions = new HashMap<>();
+            }
+            Environment.Function[] arities = functions.get(name);
+            if (arities == null || arity >= arities.length) {
+                arities = arities == null ? new Environment.Function[arity + 1] : Arrays.copyOf(arities, arity + 1);
+                functions.put(func.getName(), arities);
+            }
+            arities[arity] = func;
             return func;
         }
     }
 
+    /**
+     * Removes a function defined in this scope, such as when the method
+     * defining it is edited.
+     */
+    public void removeFunction(String name, int arity) {
+        if (getFunction(name, arity) == null) {
+            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        }
+        functions.get(name)[arity] = null;
+    }
+
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
+        Environment.Function function = getFunction(name, arity);
+        if (function != null) {
+            return function;
         } else if (parent != null) {
             return parent.lookupFunction(name, arity);
         } else {
@@ -72,6 +109,75 @@ public final class Scope {
         }
     }
 
+    /**
+     * Returns the function with the given name and arity defined in this
+     * scope, or null if there is none.
+     */
+    private Environment.Function getFunction(String name, int arity) {
+        Environment.Function[] arities = functions.get(name);
+        return arities != null && arity < arities.length ? arities[arity] : null;
+    }
+
+    /**
+     * Defines the value of a local variable in the given slot of this scope,
+     * as resolved by the Analyzer (see {@link Ast.Expr.Access#getSlot()}).
+     */
+    public void defineSlot(int slot, Environment.PlcObject value) {
+        if (slots == null) {
+            slots = new Environment.PlcObject[Math.max(slot + 1, 4)];
+        } else if (slot >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, 2 * slots.length));
+        }
+        slots[slot] = value;
+    }
+
+    /**
+     * Returns the value of the local variable in the given slot of the scope
+     * {@code depth} levels up the parent chain.
+     */
+    public Environment.PlcObject lookupSlot(int depth, int slot) {
+        Scope scope = this;
+        for (int i = 0; i < depth; i++) {
+            scope = scope.parent;
+        }
+        return scope.slots[slot];
+    }
+
+    public void assignSlot(int depth, int slot, Environment.PlcObject value) {
+        Scope scope = this;
+        for (int i = 0; i < depth; i++) {
+            scope = scope.parent;
+        }
+        scope.slots[slot] = value;
+    }
+
+    /**
+     * Appends the names, JVM names and types of the variables and functions
+     * defined in this scope, in order of their names.
+     */
+    void describe(StringBuilder builder) {
+        for (Environment.Variable variable : new TreeMap<>(variables).values()) {
+            builder.append("variable ").append(variable.getName()).append(' ').append(variable.getJvmName())
+                    .append(' ').append(variable.getType().getName()).append('\n');
+        }
+        Map<String, Environment.Function> sorted = new TreeMap<>();
+        for (Environment.Function[] arities : functions.values()) {
+            for (int arity = 0; arity < arities.length; arity++) {
+                if (arities[arity] != null) {
+                    sorted.put(arities[arity].getName() + "/" + arity, arities[arity]);
+                }
+            }
+        }
+        for (Map.Entry<String, Environment.Function> entry : sorted.entrySet()) {
+            Environment.Function function = entry.getValue();
+            builder.append("function ").append(entry.getKey()).append(' ').append(function.getJvmName());
+            for (Environment.Type type : function.getParameterTypes()) {
+                builder.append(' ').append(type.getName());
+            }
+            builder.append(" -> ").append(function.getReturnType().getName()).append('\n');
+        }
+    }
+
     @Override
     public String toString() {
         return "Scope{" +
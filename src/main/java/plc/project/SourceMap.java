@@ -0,0 +1,72 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which each line of a source starts, recorded by the {@link
+ * Lexer} as it skips newlines. Converting an index to a line and column is a
+ * binary search over these offsets instead of a scan of the source.
+ *
+ * Lines and columns are numbered from 1. A line ends at {@code \n}, {@code \r}
+ * or {@code \r\n}.
+ */
+public final class SourceMap {
+
+    private int[] starts = new int[16];
+    private int lines = 1;
+
+    /**
+     * Records that a line starts at the given index, which must be after the
+     * start of every line added so far.
+     */
+    void addLine(int start) {
+        if (lines == starts.length) {
+            starts = Arrays.copyOf(starts, lines * 2);
+        }
+        starts[lines++] = start;
+    }
+
+    /**
+     * Appends the lines of a map covering the source after this one.
+     */
+    void addLines(SourceMap map) {
+        for (int i = 1; i < map.lines; i++) {
+            addLine(map.starts[i]);
+        }
+    }
+
+    public int getLineCount() {
+        return lines;
+    }
+
+    /**
+     * Returns the index at which the given line starts.
+     */
+    public int getLineStart(int line) {
+        if (line < 1 || line > lines) {
+            throw new IndexOutOfBoundsException("Line " + line + " is out of bounds for " + lines + " lines.");
+        }
+        return starts[line - 1];
+    }
+
+    /**
+     * Returns the line containing the given index.
+     */
+    public int getLine(int index) {
+        int line = Arrays.binarySearch(starts, 0, lines, index);
+        return line >= 0 ? line + 1 : -line - 1;
+    }
+
+    public int getColumn(int index) {
+        return index - starts[getLine(index) - 1] + 1;
+    }
+
+    /**
+     * Returns the position of the index as {@code line:column}.
+     */
+    public String format(int index) {
+        int line = getLine(index);
+        return line + ":" + (index - starts[line - 1] + 1);
+    }
+
+}
@@ -0,0 +1,144 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifier names so that every occurrence of a name shares one
+ * {@link String} instance and an integer id. Names are also interned with
+ * {@link String#intern()}, so they are identical to string constants in the
+ * compiler (such as {@code "main"}) and comparisons and map lookups with them
+ * succeed on the identity check. This does not keep names alive: the JVM
+ * string pool drops strings nothing else refers to, so the memory retained is
+ * only that of the table, which can be emptied with {@link #clear()}.
+ *
+ * Names can be interned directly from a {@link CharSequence} view over the
+ * source, which only allocates a {@link String} for names not seen before.
+ * Lookups are lock free and insertions are synchronized, so a table can be
+ * shared between threads.
+ */
+public final class SymbolTable {
+
+    private volatile Symbol[] table = new Symbol[64];
+    private volatile String[] names = new String[32];
+    private volatile int size = 0;
+
+    /**
+     * Returns the canonical instance of the name.
+     */
+    public String intern(CharSequence name) {
+        return lookup(name).name;
+    }
+
+    /**
+     * Returns the id of the name, interning it if it is not already present.
+     * Ids are assigned in order starting at 0.
+     */
+    public int getId(CharSequence name) {
+        return lookup(name).id;
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Symbol id " + id + " is not defined.");
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all names, so ids are assigned from 0 again.
+     */
+    public synchronized void clear() {
+        table = new Symbol[64];
+        names = new String[32];
+        size = 0;
+    }
+
+    /**
+     * Finds the symbol for the name without locking, only synchronizing to
+     * insert a new symbol. A reader racing with an insertion may miss the new
+     * symbol, in which case it finds it again under the lock.
+     */
+    private Symbol lookup(CharSequence name) {
+        int hash = hash(name);
+        Symbol symbol = find(table, name, hash);
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (this) {
+            symbol = find(table, name, hash);
+            if (symbol == null) {
+                if (2 * (size + 1) > table.length) {
+                    Symbol[] resized = new Symbol[table.length * 2];
+                    for (Symbol existing : table) {
+                        if (existing != null) {
+                            resized[probe(resized, existing.hash)] = existing;
+                        }
+                    }
+                    names = Arrays.copyOf(names, table.length);
+                    table = resized;
+                }
+                symbol = new Symbol(name.toString().intern(), size, hash);
+                table[probe(table, hash)] = symbol;
+                names[symbol.id] = symbol.name;
+                size++;
+            }
+            return symbol;
+        }
+    }
+
+    private static Symbol find(Symbol[] table, CharSequence name, int hash) {
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && equals(table[i].name, name)) {
+                return table[i];
+            }
+        }
+        return null;
+    }
+
+    private static int probe(Symbol[] table, int hash) {
+        int i = hash & (table.length - 1);
+        while (table[i] != null) {
+            i = (i + 1) & (table.length - 1);
+        }
+        return i;
+    }
+
+    private static boolean equals(String name, CharSequence other) {
+        if (name.length() != other.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = 31 * hash + name.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Symbol {
+
+        private final String name;
+        private final int id;
+        private final int hash;
+
+        private Symbol(String name, int id, int hash) {
+            this.name = name;
+            this.id = id;
+            this.hash = hash;
+        }
+
+    }
+
+}
@@ -1,5 +1,9 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
 public final class Token {
 
     public enum Type {
@@ -11,21 +15,198 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * A finer classification of tokens which gives every keyword and operator
+     * its own kind, so the parser can compare kinds instead of literals. Any
+     * other identifier or operator has the generic {@link #IDENTIFIER} or
+     * {@link #OPERATOR} kind.
+     */
+    public enum Kind {
+        IDENTIFIER(Type.IDENTIFIER, null),
+        INTEGER(Type.INTEGER, null),
+        DECIMAL(Type.DECIMAL, null),
+        CHARACTER(Type.CHARACTER, null),
+        STRING(Type.STRING, null),
+        OPERATOR(Type.OPERATOR, null),
+
+        LET(Type.IDENTIFIER, "LET"),
+        DEF(Type.IDENTIFIER, "DEF"),
+        DO(Type.IDENTIFIER, "DO"),
+        END(Type.IDENTIFIER, "END"),
+        IF(Type.IDENTIFIER, "IF"),
+        ELSE(Type.IDENTIFIER, "ELSE"),
+        FOR(Type.IDENTIFIER, "FOR"),
+        IN(Type.IDENTIFIER, "IN"),
+        WHILE(Type.IDENTIFIER, "WHILE"),
+        RETURN(Type.IDENTIFIER, "RETURN"),
+        NIL(Type.IDENTIFIER, "NIL"),
+        TRUE(Type.IDENTIFIER, "TRUE"),
+        FALSE(Type.IDENTIFIER, "FALSE"),
+        AND(Type.IDENTIFIER, "AND"),
+        OR(Type.IDENTIFIER, "OR"),
+
+        LESS(Type.OPERATOR, "<"),
+        LESS_EQUAL(Type.OPERATOR, "<="),
+        GREATER(Type.OPERATOR, ">"),
+        GREATER_EQUAL(Type.OPERATOR, ">="),
+        EQUAL(Type.OPERATOR, "=="),
+        NOT_EQUAL(Type.OPERATOR, "!="),
+        NOT(Type.OPERATOR, "!"),
+        ASSIGN(Type.OPERATOR, "="),
+        PLUS(Type.OPERATOR, "+"),
+        MINUS(Type.OPERATOR, "-"),
+        STAR(Type.OPERATOR, "*"),
+        SLASH(Type.OPERATOR, "/"),
+        DOT(Type.OPERATOR, "."),
+        COMMA(Type.OPERATOR, ","),
+        SEMICOLON(Type.OPERATOR, ";"),
+        COLON(Type.OPERATOR, ":"),
+        LEFT_PAREN(Type.OPERATOR, "("),
+        RIGHT_PAREN(Type.OPERATOR, ")");
+
+        private static final Kind[] GENERIC = {IDENTIFIER, INTEGER, DECIMAL, CHARACTER, STRING, OPERATOR};
+        private static final Kind[] KEYWORDS = new Kind[32];
+        private static final Kind[] OPERATORS = new Kind[128];
+        private static final Kind[] COMPOUND_OPERATORS = new Kind[128];
+        private static int keywordMultiplier;
+
+        private final Type type;
+        private final String literal;
+
+        Kind(Type type, String literal) {
+            this.type = type;
+            this.literal = literal;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the literal of a keyword or operator kind, or {@code null}
+         * for kinds which match many literals.
+         */
+        public String getLiteral() {
+            return literal;
+        }
+
+        /**
+         * Classifies a token of the given type. Keywords are found through a
+         * perfect hash of the first and last characters and the length, so
+         * there is at most one candidate to compare against.
+         */
+        public static Kind of(Type type, CharSequence literal) {
+            int length = literal.length();
+            if (type == Type.IDENTIFIER && length >= 2 && length <= 6) {
+                Kind keyword = KEYWORDS[keywordHash(literal.charAt(0), literal.charAt(length - 1), length, keywordMultiplier)];
+                if (keyword != null && keyword.matches(literal)) {
+                    return keyword;
+                }
+            }
+            else if (type == Type.OPERATOR && length >= 1 && length <= 2 && literal.charAt(0) < 128) {
+                Kind operator = length == 1 ? OPERATORS[literal.charAt(0)] : COMPOUND_OPERATORS[literal.charAt(0)];
+                if (operator != null && (length == 1 || literal.charAt(1) == '=')) {
+                    return operator;
+                }
+            }
+            return GENERIC[type.ordinal()];
+        }
+
+        private boolean matches(CharSequence literal) {
+            if (this.literal.length() != literal.length()) {
+                return false;
+            }
+            for (int i = 0; i < literal.length(); i++) {
+                if (this.literal.charAt(i) != literal.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int keywordHash(char first, char last, int length, int multiplier) {
+            return (first * multiplier + last + length) & (KEYWORDS.length - 1);
+        }
+
+        static {
+            // Find a multiplier for which no keywords collide
+            for (int multiplier = 1; keywordMultiplier == 0; multiplier++) {
+                Arrays.fill(KEYWORDS, null);
+                keywordMultiplier = multiplier;
+                for (Kind kind : values()) {
+                    if (kind.type == Type.IDENTIFIER && kind.literal != null) {
+                        int hash = keywordHash(kind.literal.charAt(0), kind.literal.charAt(kind.literal.length() - 1), kind.literal.length(), multiplier);
+                        if (KEYWORDS[hash] != null) {
+                            keywordMultiplier = 0;
+                            break;
+                        }
+                        KEYWORDS[hash] = kind;
+                    }
+                }
+            }
+            for (Kind kind : values()) {
+                if (kind.type == Type.OPERATOR && kind.literal != null) {
+                    (kind.literal.length() == 1 ? OPERATORS : COMPOUND_OPERATORS)[kind.literal.charAt(0)] = kind;
+                }
+            }
+        }
+
+    }
+
     private final Type type;
-    private final String literal;
+    private final CharSequence text;
     private final int index;
+    private String literal;
+    private Kind kind;
+    private Object value;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.text = literal;
         this.literal = literal;
         this.index = index;
     }
 
+    /**
+     * Creates a token whose literal is only copied into a {@link String} the
+     * first time {@link #getLiteral()} is called, such as a view over a
+     * memory-mapped source.
+     */
+    public Token(Type type, CharSequence text, int index) {
+        this.type = type;
+        this.text = text;
+        this.index = index;
+    }
+
+    public Token(Kind kind, CharSequence text, int index) {
+        this(kind.getType(), text, index);
+        this.kind = kind;
+    }
+
+    /**
+     * Creates a token with a value already decoded by the lexer, see {@link
+     * #getValue()}.
+     */
+    public Token(Kind kind, CharSequence text, int index, Object value) {
+        this(kind, text, index);
+        this.value = value;
+    }
+
     public Type getType() {
         return type;
     }
 
+    public Kind getKind() {
+        if (kind == null) {
+            kind = Kind.of(type, text);
+        }
+        return kind;
+    }
+
     public String getLiteral() {
+        if (literal == null) {
+            literal = text.toString();
+        }
         return literal;
     }
 
@@ -33,17 +214,128 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns this token moved by {@code delta} characters, sharing its
+     * literal, kind and value.
+     */
+    Token shift(int delta) {
+        if (delta == 0) {
+            return this;
+        }
+        Token token = new Token(type, text, index + delta);
+        token.literal = literal;
+        token.kind = kind;
+        token.value = value;
+        return token;
+    }
+
+    /**
+     * Returns the decoded value of a literal token, which is a {@link
+     * BigInteger}, {@link BigDecimal}, {@link Character}, or {@link String}
+     * (without quotes and with escapes replaced) for the corresponding type,
+     * or {@code null} for identifiers and operators.
+     *
+     * Tokens from the lexer have their value decoded while lexing, otherwise
+     * it is decoded from the literal the first time it is requested.
+     */
+    public Object getValue() {
+        if (value == null) {
+            value = decode(type, text, null);
+        }
+        return value;
+    }
+
+    /**
+     * Decodes the value of a literal of the given type, see {@link
+     * #getValue()}. Strings are decoded into the given builder (if not null)
+     * so it can be reused between tokens.
+     */
+    static Object decode(Type type, CharSequence literal, StringBuilder builder) {
+        switch (type) {
+            case INTEGER:
+                return decodeInteger(literal);
+            case DECIMAL:
+                return decodeDecimal(literal);
+            case CHARACTER:
+                return literal.charAt(1) == '\\' ? unescape(literal.charAt(2)) : literal.charAt(1);
+            case STRING:
+                return decodeString(literal, builder != null ? builder : new StringBuilder(literal.length()));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Integers with up to 18 digits always fit in a long, so they are
+     * accumulated directly and only longer literals are parsed as a {@link
+     * BigInteger}.
+     */
+    private static BigInteger decodeInteger(CharSequence literal) {
+        int start = isSign(literal.charAt(0)) ? 1 : 0;
+        if (literal.length() - start > 18) {
+            return new BigInteger(literal.toString());
+        }
+        long value = 0;
+        for (int i = start; i < literal.length(); i++) {
+            value = value * 10 + (literal.charAt(i) - '0');
+        }
+        return BigInteger.valueOf(literal.charAt(0) == '-' ? -value : value);
+    }
+
+    private static BigDecimal decodeDecimal(CharSequence literal) {
+        int start = isSign(literal.charAt(0)) ? 1 : 0;
+        if (literal.length() - start > 19) {
+            return new BigDecimal(literal.toString());
+        }
+        long unscaled = 0;
+        int scale = 0;
+        for (int i = start; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '.') {
+                scale = literal.length() - i - 1;
+            }
+            else {
+                unscaled = unscaled * 10 + (c - '0');
+            }
+        }
+        return BigDecimal.valueOf(literal.charAt(0) == '-' ? -unscaled : unscaled, scale);
+    }
+
+    private static String decodeString(CharSequence literal, StringBuilder builder) {
+        builder.setLength(0);
+        int end = literal.length() - 1;
+        for (int i = 1; i < end; i++) {
+            char c = literal.charAt(i);
+            builder.append(c == '\\' ? unescape(literal.charAt(++i)) : c);
+        }
+        return builder.toString();
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case 'b': return '\b';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            default: return c;
+        }
+    }
+
+    private static boolean isSign(char c) {
+        return c == '+' || c == '-';
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,164 @@
+package plc.project;
+
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A compact list of tokens stored as parallel primitive arrays of kind
+ * ordinals, start indices, and lengths into the original source. Unlike a
+ * {@code List<Token>}, no per-token objects are created while lexing.
+ *
+ * The {@link Parser} reads types and literals directly from the arrays, while
+ * {@link #get(int)} creates a {@link Token} whose literal is a view over the
+ * source that is only copied once {@link Token#getLiteral()} is called.
+ */
+public final class TokenBuffer extends AbstractList<Token> implements RandomAccess {
+
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+
+    private CharSequence source;
+    private final SymbolTable symbols;
+    private byte[] kinds = new byte[16];
+    private int[] starts = new int[16];
+    private int[] lengths = new int[16];
+    private Object[] values;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, new SymbolTable());
+    }
+
+    /**
+     * Creates a buffer which interns identifier literals in the given symbol
+     * table when they are requested.
+     */
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    /**
+     * Removes all tokens and replaces the source, keeping the arrays at their
+     * current capacity so the buffer can be filled again without allocating.
+     */
+    public void reset(CharSequence source) {
+        if (values != null) {
+            Arrays.fill(values, 0, Math.min(size, values.length), null);
+        }
+        this.source = source;
+        this.size = 0;
+    }
+
+    public void add(Token.Kind kind, int start, int length) {
+        add(kind, start, length, null);
+    }
+
+    /**
+     * Adds a token with a value already decoded by the lexer. The values array
+     * is only allocated once the first literal is added.
+     */
+    public void add(Token.Kind kind, int start, int length, Object value) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        if (value != null) {
+            if (values == null) {
+                values = new Object[kinds.length];
+            }
+            else if (values.length < kinds.length) {
+                values = Arrays.copyOf(values, kinds.length);
+            }
+            values[size] = value;
+        }
+        kinds[size] = (byte) kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int i) {
+        return getKind(i).getType();
+    }
+
+    public Token.Kind getKind(int i) {
+        checkIndex(i);
+        return KINDS[kinds[i]];
+    }
+
+    public int getIndex(int i) {
+        checkIndex(i);
+        return starts[i];
+    }
+
+    public int getLength(int i) {
+        checkIndex(i);
+        return lengths[i];
+    }
+
+    public String getLiteral(int i) {
+        Token.Kind kind = getKind(i);
+        if (kind.getLiteral() != null) {
+            return kind.getLiteral();
+        }
+        else if (kind == Token.Kind.IDENTIFIER) {
+            return symbols.intern(CharBuffer.wrap(source, starts[i], starts[i] + lengths[i]));
+        }
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * Returns the decoded value of the token at {@code i}, see {@link
+     * Token#getValue()}.
+     */
+    public Object getValue(int i) {
+        checkIndex(i);
+        if (values != null && i < values.length && values[i] != null) {
+            return values[i];
+        }
+        return Token.decode(getType(i), CharBuffer.wrap(source, starts[i], starts[i] + lengths[i]), null);
+    }
+
+    /**
+     * Returns true if the literal of the token at {@code i} equals the given
+     * string, comparing against the source without copying the literal.
+     */
+    public boolean matches(int i, String literal) {
+        checkIndex(i);
+        if (lengths[i] != literal.length()) {
+            return false;
+        }
+        for (int j = 0; j < lengths[i]; j++) {
+            if (source.charAt(starts[i] + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Token get(int i) {
+        checkIndex(i);
+        Object value = values != null && i < values.length ? values[i] : null;
+        return new Token(KINDS[kinds[i]], CharBuffer.wrap(source, starts[i], starts[i] + lengths[i]), starts[i], value);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " is out of bounds for " + size + " tokens.");
+        }
+    }
+
+}
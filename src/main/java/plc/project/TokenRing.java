@@ -0,0 +1,153 @@
+package plc.project;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single-producer, single-consumer queue of tokens, used to run the
+ * {@link Lexer} on one thread while the {@link Parser} consumes its tokens on
+ * another (see {@link FrontEnd#parsePipelined(Lexer)}).
+ *
+ * Tokens are addressed by their sequence number. The consumer may look at any
+ * token it has not released, so the capacity bounds how far ahead of the
+ * parser the lexer can get as well as the parser's lookahead. Each side spins
+ * briefly before parking when the ring is full or empty, and is unparked by
+ * the other side once it makes progress.
+ */
+public final class TokenRing {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int SPINS = 64;
+
+    private final Token[] slots;
+    private final int mask;
+    private volatile long written = 0;
+    private volatile long released = 0;
+    private volatile boolean closed = false;
+    private volatile boolean cancelled = false;
+    private volatile RuntimeException failure;
+    private volatile Thread producer;
+    private volatile Thread consumer;
+
+    public TokenRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a ring holding up to {@code capacity} tokens, rounded up to a
+     * power of two.
+     */
+    public TokenRing(int capacity) {
+        if (capacity < 4) {
+            throw new IllegalArgumentException("Token ring capacity must be at least 4.");
+        }
+        slots = new Token[Integer.highestOneBit(capacity - 1) << 1];
+        mask = slots.length - 1;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Publishes the next token, waiting while the ring is full. Throws a
+     * {@link CancellationException} if the consumer has stopped, which is
+     * checked for every token so the producer stops without filling the ring.
+     */
+    public void put(Token token) {
+        long sequence = written;
+        for (int spins = 0; cancelled || sequence - released == slots.length; spins++) {
+            if (cancelled) {
+                throw new CancellationException("The token ring was cancelled.");
+            }
+            await(spins, true);
+        }
+        slots[(int) sequence & mask] = token;
+        written = sequence + 1;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Marks the end of the tokens.
+     */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Marks the end of the tokens with an exception, which is thrown to the
+     * consumer once it has read every token published before it.
+     */
+    public void fail(RuntimeException exception) {
+        failure = exception;
+        close();
+    }
+
+    /**
+     * Returns the token with the given sequence number, waiting until it is
+     * published, or {@code null} if the ring was closed before it. If the
+     * producer failed, its exception is thrown instead of returning null.
+     */
+    public Token get(long sequence) {
+        if (sequence < released || sequence - released >= slots.length) {
+            throw new IllegalArgumentException("Token " + sequence + " is outside the ring.");
+        }
+        for (int spins = 0; sequence >= written; spins++) {
+            if (closed && sequence >= written) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return null;
+            }
+            await(spins, false);
+        }
+        return slots[(int) sequence & mask];
+    }
+
+    /**
+     * Releases every token before the given sequence number, allowing the
+     * producer to reuse their slots.
+     */
+    public void release(long sequence) {
+        if (sequence > released) {
+            for (long i = released; i < sequence; i++) {
+                slots[(int) i & mask] = null;
+            }
+            released = sequence;
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * Stops the producer, which is woken if it is waiting for space.
+     */
+    public void cancel() {
+        cancelled = true;
+        LockSupport.unpark(producer);
+    }
+
+    /**
+     * Spins for the first few attempts and then parks the current thread,
+     * which is registered so the other side can unpark it. The caller checks
+     * its condition again after registering, so a wake up is never missed.
+     */
+    private void await(int spins, boolean isProducer) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        }
+        else if (spins == SPINS) {
+            if (isProducer) {
+                producer = Thread.currentThread();
+            }
+            else {
+                consumer = Thread.currentThread();
+            }
+        }
+        else {
+            LockSupport.park(this);
+        }
+    }
+
+}
@@ -1,14 +1,23 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -486,6 +495,260 @@ public final class AnalyzerTests {
         );
     }
 
+    private static final String SERIALIZED = String.join("\n",
+            "LET name: String = \"a\\tb\";",
+            "LET limit: Integer = 10;",
+            "LET scale: Decimal;",
+            "DEF f(n: Integer): Integer DO",
+            "    LET total: Integer = 0;",
+            "    WHILE total < n DO total = total + name.length; END",
+            "    IF total.compare(limit) == 0 DO print(total); ELSE print(NIL); END",
+            "    RETURN total;",
+            "END",
+            "DEF main(): Integer DO",
+            "    LET d = 1.50;",
+            "    IF TRUE AND (1 < 2) DO print('c'); print(d * 2.0); END",
+            "    RETURN f(limit);",
+            "END"
+    );
+
+    @Test
+    public void testSerialize() throws IOException {
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Ast.Source loaded = AstSerializer.deserialize(SERIALIZED, AstSerializer.serialize(SERIALIZED, ast));
+        Assertions.assertEquals(ast, loaded);
+        Ast.Method main = loaded.getMethods().get(1);
+        Ast.Expr.Function call = (Ast.Expr.Function) ((Ast.Stmt.Return) main.getStatements().get(2)).getValue();
+        Assertions.assertSame(loaded.getFields().get(1).getVariable(), ((Ast.Expr.Access) call.getArguments().get(0)).getVariable());
+        Assertions.assertSame(loaded.getMethods().get(0).getFunction(), call.getFunction());
+        Ast.Stmt.While loop = (Ast.Stmt.While) loaded.getMethods().get(0).getStatements().get(1);
+        Ast.Expr.Binary sum = (Ast.Expr.Binary) ((Ast.Stmt.Assignment) loop.getStatements().get(0)).getValue();
+        Assertions.assertSame(Environment.Type.STRING.getField("length"), ((Ast.Expr.Access) sum.getRight()).getVariable());
+        Assertions.assertEquals(1, ((Ast.Expr.Access) sum.getLeft()).getDepth());
+        Assertions.assertEquals(1, ((Ast.Expr.Access) sum.getLeft()).getSlot());
+    }
+
+    @Test
+    public void testAddress() {
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        List<Ast.Stmt> f = ast.getMethods().get(0).getStatements();
+        Assertions.assertEquals(1, ((Ast.Stmt.Declaration) f.get(0)).getSlot());
+        Ast.Expr.Binary condition = (Ast.Expr.Binary) ((Ast.Stmt.While) f.get(1)).getCondition();
+        Assertions.assertEquals(0, ((Ast.Expr.Access) condition.getLeft()).getDepth());
+        Assertions.assertEquals(1, ((Ast.Expr.Access) condition.getLeft()).getSlot());
+        Assertions.assertEquals(0, ((Ast.Expr.Access) condition.getRight()).getSlot());
+        Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) ((Ast.Stmt.While) f.get(1)).getStatements().get(0);
+        Assertions.assertEquals(1, ((Ast.Expr.Access) assignment.getReceiver()).getDepth());
+        Ast.Expr.Function call = (Ast.Expr.Function) ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(2)).getValue();
+        Assertions.assertFalse(((Ast.Expr.Access) call.getArguments().get(0)).hasAddress());
+        Assertions.assertEquals(0, ((Ast.Stmt.Declaration) ast.getMethods().get(1).getStatements().get(0)).getSlot());
+    }
+
+    @Test
+    public void testSerializeUnanalyzed() throws IOException {
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        Ast.Source loaded = AstSerializer.deserialize(SERIALIZED, AstSerializer.serialize(SERIALIZED, ast));
+        Assertions.assertEquals(ast, loaded);
+        Assertions.assertThrows(IllegalStateException.class, () -> loaded.getFields().get(0).getVariable());
+    }
+
+    @Test
+    public void testSerializeStale() {
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        byte[] bytes = AstSerializer.serialize(SERIALIZED, ast);
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(SERIALIZED + " ", bytes));
+        byte[] corrupted = bytes.clone();
+        corrupted[corrupted.length - 1] ^= 1;
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(SERIALIZED, corrupted));
+        byte[] version = bytes.clone();
+        version[5] ^= 1;
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(SERIALIZED, version));
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(SERIALIZED, Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test
+    public void testSerializeStaleType() throws IOException {
+        Environment.Type type = new Environment.Type("Stale", "Stale", new Scope(Environment.Type.ANY.getScope()));
+        Environment.registerType(type);
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        byte[] bytes = AstSerializer.serialize(SERIALIZED, ast);
+        Assertions.assertEquals(ast, AstSerializer.deserialize(SERIALIZED, bytes));
+        int version = Environment.getTypeVersion();
+        type.getScope().defineFunction("touch", "touch", Arrays.asList(type), Environment.Type.NIL, args -> Environment.NIL);
+        Assertions.assertNotEquals(version, Environment.getTypeVersion());
+        Assertions.assertThrows(IOException.class, () -> AstSerializer.deserialize(SERIALIZED, bytes));
+    }
+
+    @Test
+    public void testCompilationCache() {
+        CompilationCache cache = new CompilationCache(2, 1000);
+        Ast.Source ast = cache.get(SERIALIZED);
+        Assertions.assertEquals(Environment.Type.INTEGER, ast.getMethods().get(1).getFunction().getReturnType());
+        Assertions.assertSame(ast, cache.get(new StringBuilder(SERIALIZED)));
+        String other = "DEF main(): Integer DO RETURN 0; END";
+        cache.get(other);
+        cache.get(SERIALIZED);
+        cache.get(other + " ");
+        Assertions.assertEquals(2, cache.size());
+        Assertions.assertSame(ast, cache.get(SERIALIZED));
+        Assertions.assertNotSame(cache.get(other), cache.get(other + " "));
+        Assertions.assertEquals(3, cache.getHits());
+        Assertions.assertEquals(5, cache.getMisses());
+        Assertions.assertEquals(3, cache.getEvictions());
+        Assertions.assertEquals(other.length() * 2 + 1, cache.getWeight());
+        Assertions.assertThrows(ParseException.class, () -> cache.get("LET x: Integer = 1"));
+        Assertions.assertThrows(ParseException.class, () -> cache.get("LET x: Integer = 1"));
+        Assertions.assertEquals(7, cache.getMisses());
+        Assertions.assertEquals(4, cache.getEvictions());
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCompilationCacheOversized() {
+        String other = "DEF main(): Integer DO RETURN 0; END";
+        CompilationCache cache = new CompilationCache(2, other.length() * 2);
+        Ast.Source ast = cache.get(other);
+        Ast.Source large = cache.get(SERIALIZED);
+        Assertions.assertEquals(Environment.Type.INTEGER, large.getMethods().get(1).getFunction().getReturnType());
+        Assertions.assertNotSame(large, cache.get(SERIALIZED));
+        Assertions.assertSame(ast, cache.get(other));
+        Assertions.assertEquals(1, cache.size());
+        Assertions.assertEquals(0, cache.getEvictions());
+        Assertions.assertEquals(other.length(), cache.getWeight());
+    }
+
+    @Test
+    public void testCompilationCacheConcurrent() throws InterruptedException {
+        AtomicInteger compilations = new AtomicInteger();
+        CompilationCache cache = new CompilationCache(10, Long.MAX_VALUE, source -> {
+            compilations.incrementAndGet();
+            Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+            new Analyzer(new Scope(null)).visit(ast);
+            return ast;
+        });
+        List<Ast.Source> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> results.add(cache.get(SERIALIZED))));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(1, compilations.get());
+        Assertions.assertEquals(8, results.size());
+        results.forEach(result -> Assertions.assertSame(results.get(0), result));
+        Assertions.assertEquals(7, cache.getHits());
+    }
+
+    @Test
+    public void testParallel() {
+        Ast.Source expected = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(expected);
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            new Analyzer(new Scope(null)).visit(ast, executor);
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(expected, ast);
+        Ast.Stmt.While loop = (Ast.Stmt.While) ast.getMethods().get(0).getStatements().get(1);
+        Ast.Expr.Access n = (Ast.Expr.Access) ((Ast.Expr.Binary) loop.getCondition()).getRight();
+        Assertions.assertEquals(0, n.getSlot());
+    }
+
+    @Test
+    public void testParallelForward() {
+        String source = String.join("\n",
+                "DEF main(): Integer DO RETURN f(1) + g(2); END",
+                "DEF f(x: Integer): Integer DO RETURN x; END",
+                "DEF g(x: Integer): Integer DO RETURN f(x); END"
+        );
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(ast));
+        Ast.Source parallel = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(parallel, Runnable::run);
+        Ast.Expr.Function call = (Ast.Expr.Function) ((Ast.Stmt.Return) parallel.getMethods().get(2).getStatements().get(0)).getValue();
+        Assertions.assertSame(parallel.getMethods().get(1).getFunction(), call.getFunction());
+    }
+
+    @Test
+    public void testParallelErrors() {
+        String source = String.join("\n",
+                "DEF main(): Integer DO RETURN 0; END",
+                "DEF f(): Integer DO RETURN \"f\"; END",
+                "DEF g(): Integer DO RETURN missing; END"
+        );
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            RuntimeException error = Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(ast, executor));
+            Assertions.assertEquals("Error: Not assignable", error.getMessage());
+            Assertions.assertEquals(1, error.getSuppressed().length);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDependencies() {
+        Ast.Source ast = new Parser(new Lexer(SERIALIZED).lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("name", "limit", "print/1")), analyzer.getDependencies(ast.getMethods().get(0)));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("limit", "print/1", "f/1")), analyzer.getDependencies(ast.getMethods().get(1)));
+    }
+
+    @Test
+    public void testReanalyze() {
+        Ast.Source ast = new Parser(new Lexer(String.join("\n",
+                "DEF f(x: Integer): Integer DO RETURN x; END",
+                "DEF g(): Integer DO print(f(1)); RETURN 0; END",
+                "DEF h(): Integer DO RETURN 2; END",
+                "DEF main(): Integer DO RETURN g() + h(); END"
+        )).lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast, Runnable::run);
+        List<Ast.Method> methods = ast.getMethods();
+        Environment.Function function = methods.get(0).getFunction();
+        // Body edited
+        Ast.Method body = new Parser(new Lexer("DEF f(x: Integer): Integer DO RETURN x + 1; END").lex()).parseSource().getMethods().get(0);
+        Ast.Source edited = new Ast.Source(ast.getFields(), Arrays.asList(body, methods.get(1), methods.get(2), methods.get(3)));
+        Assertions.assertEquals(Arrays.asList(body), analyzer.reanalyze(edited, Arrays.asList(body)));
+        Assertions.assertSame(function, body.getFunction());
+        // Signature edited
+        Ast.Method signature = new Parser(new Lexer("DEF f(x: Integer): String DO RETURN \"x\"; END").lex()).parseSource().getMethods().get(0);
+        edited = new Ast.Source(ast.getFields(), Arrays.asList(signature, methods.get(1), methods.get(2), methods.get(3)));
+        Assertions.assertEquals(Arrays.asList(signature, methods.get(1)), analyzer.reanalyze(edited, Arrays.asList(signature)));
+        Ast.Stmt.Expression print = (Ast.Stmt.Expression) methods.get(1).getStatements().get(0);
+        Ast.Expr.Function call = (Ast.Expr.Function) ((Ast.Expr.Function) print.getExpression()).getArguments().get(0);
+        Assertions.assertSame(signature.getFunction(), call.getFunction());
+        Assertions.assertEquals(Environment.Type.STRING, call.getType());
+        // Caller broken
+        Ast.Method broken = new Parser(new Lexer("DEF f(x: String): String DO RETURN x; END").lex()).parseSource().getMethods().get(0);
+        Ast.Source invalid = new Ast.Source(ast.getFields(), Arrays.asList(broken, methods.get(1), methods.get(2), methods.get(3)));
+        Assertions.assertThrows(RuntimeException.class, () -> analyzer.reanalyze(invalid, Arrays.asList(broken)));
+        // Callers which failed are checked again with later edits
+        Ast.Method other = new Parser(new Lexer("DEF h(): Integer DO RETURN 3; END").lex()).parseSource().getMethods().get(0);
+        Ast.Source pending = new Ast.Source(ast.getFields(), Arrays.asList(broken, methods.get(1), other, methods.get(3)));
+        Assertions.assertThrows(RuntimeException.class, () -> analyzer.reanalyze(pending, Arrays.asList(other)));
+        Ast.Source fixed = new Ast.Source(ast.getFields(), Arrays.asList(signature, methods.get(1), other, methods.get(3)));
+        Assertions.assertEquals(Arrays.asList(signature, methods.get(1), other), analyzer.reanalyze(fixed, Arrays.asList(signature)));
+    }
+
+    @Test
+    public void testReanalyzeSequential() {
+        Ast.Source ast = new Parser(new Lexer("DEF main(): Integer DO RETURN 0; END").lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        Assertions.assertThrows(IllegalStateException.class, () -> analyzer.reanalyze(ast, Arrays.asList()));
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
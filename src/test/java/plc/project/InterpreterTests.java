@@ -251,6 +251,57 @@ final class InterpreterTests {
         Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testAddressed(String test, String input, Object expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Scope scope = new Scope(null);
+        scope.defineFunction("range", 2, args -> Environment.create(IntStream.range(
+                        ((BigInteger) args.get(0).getValue()).intValue(), ((BigInteger) args.get(1).getValue()).intValue())
+                .mapToObj(i -> Environment.create(BigInteger.valueOf(i)))
+                .collect(Collectors.toList())));
+        test(ast, expected, scope);
+        Scope types = new Scope(null);
+        types.defineFunction("range", "range", Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER), Environment.Type.INTEGER_ITERABLE, args -> Environment.NIL);
+        new Analyzer(types).visit(ast);
+        test(ast, expected, scope);
+    }
+
+    private static Stream<Arguments> testAddressed() {
+        return Stream.of(
+                Arguments.of("Nested Scopes", String.join("\n",
+                        "LET limit: Integer = 3;",
+                        "DEF sum(n: Integer): Integer DO",
+                        "    LET total = 0;",
+                        "    FOR i IN range(0, n) DO",
+                        "        LET j = i;",
+                        "        WHILE j > 0 DO",
+                        "            total = total + j;",
+                        "            j = j - 1;",
+                        "        END",
+                        "    END",
+                        "    IF total > limit DO",
+                        "        LET total = 100;",
+                        "        RETURN total + n;",
+                        "    END",
+                        "    RETURN total;",
+                        "END",
+                        "DEF main(): Integer DO",
+                        "    RETURN sum(4) + sum(1);",
+                        "END"
+                ), BigInteger.valueOf(104)),
+                Arguments.of("Recursion", String.join("\n",
+                        "DEF fib(k: Integer): Integer DO",
+                        "    IF k < 2 DO RETURN k; END",
+                        "    RETURN fib(k - 1) + fib(k - 2);",
+                        "END",
+                        "DEF main(): Integer DO",
+                        "    RETURN fib(10);",
+                        "END"
+                ), BigInteger.valueOf(55))
+        );
+    }
+
     @ParameterizedTest
     @MethodSource
     void testLiteralExpression(String test, Ast ast, Object expected) {
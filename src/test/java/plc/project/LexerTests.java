@@ -6,8 +6,15 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -142,6 +149,100 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, Token.Kind expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getKind());
+        Assertions.assertEquals(expected, new Token(expected.getType(), input, 0).getKind());
+    }
+
+    private static Stream<Arguments> testKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", Token.Kind.LET),
+                Arguments.of("Keyword Prefix", "LETTER", Token.Kind.IDENTIFIER),
+                Arguments.of("Lowercase Keyword", "end", Token.Kind.IDENTIFIER),
+                Arguments.of("Long Keyword", "RETURN", Token.Kind.RETURN),
+                Arguments.of("Integer", "12", Token.Kind.INTEGER),
+                Arguments.of("Compound Operator", "<=", Token.Kind.LESS_EQUAL),
+                Arguments.of("Single Operator", ";", Token.Kind.SEMICOLON),
+                Arguments.of("Other Operator", "$", Token.Kind.OPERATOR)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Object expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getValue());
+        Assertions.assertEquals(expected, new Token(token.getType(), input, 0).getValue());
+        Assertions.assertEquals(expected, new Lexer(input).lexBuffer().getValue(0));
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "123", BigInteger.valueOf(123)),
+                Arguments.of("Negative Integer", "-45", BigInteger.valueOf(-45)),
+                Arguments.of("Large Integer", "123456789012345678901234567890", new BigInteger("123456789012345678901234567890")),
+                Arguments.of("Decimal", "3.140", new BigDecimal("3.140")),
+                Arguments.of("Negative Decimal", "-0.5", new BigDecimal("-0.5")),
+                Arguments.of("Large Decimal", "12345678901234567890.5", new BigDecimal("12345678901234567890.5")),
+                Arguments.of("Character", "'c'", 'c'),
+                Arguments.of("Escaped Character", "'\\t'", '\t'),
+                Arguments.of("String", "\"abc\"", "abc"),
+                Arguments.of("Escaped String", "\"a\\bb\\rc\\\\\\\"\"", "a\bb\rc\\\""),
+                Arguments.of("Identifier", "abc", null)
+        );
+    }
+
+    @Test
+    void testReset() {
+        Lexer lexer = new Lexer(new StringReader("LET x = 1;"));
+        Assertions.assertEquals(new Lexer("LET x = 1;").lex(), lexer.lex());
+        lexer.reset("print(\"a\");");
+        Assertions.assertEquals(new Lexer("print(\"a\");").lex(), lexer.lex());
+        lexer.reset("x.y");
+        Assertions.assertEquals(new Lexer("x.y").lexBuffer(), lexer.lexBuffer());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSourceMap(String test, String input, int index, String expected) {
+        Lexer lexer = new Lexer(input);
+        lexer.lex();
+        Assertions.assertEquals(expected, lexer.getSourceMap().format(index));
+        Lexer parallel = new Lexer(input);
+        parallel.lexParallel(ForkJoinPool.commonPool(), 2);
+        Assertions.assertEquals(expected, parallel.getSourceMap().format(index));
+    }
+
+    private static Stream<Arguments> testSourceMap() {
+        return Stream.of(
+                Arguments.of("First Line", "abc def", 4, "1:5"),
+                Arguments.of("Second Line", "abc\ndef", 5, "2:2"),
+                Arguments.of("Line Start", "abc\ndef", 4, "2:1"),
+                Arguments.of("Newline", "abc\ndef", 3, "1:4"),
+                Arguments.of("Carriage Return", "a\rb\r\nc", 5, "3:1"),
+                Arguments.of("Blank Lines", "a\n\n\n  b", 6, "4:3")
+        );
+    }
+
+    @Test
+    void testSourceMapException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer("LET x = 1;\nLET y = \"a\n").lex());
+        Assertions.assertEquals("2:11", exception.getPosition());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> FrontEnd.parse("LET x: Integer = 1;\n\nLET y: Integer = 1"));
+        Assertions.assertEquals("3:19", exception.getPosition());
+    }
+
+    @Test
+    void testSymbols() {
+        List<Token> tokens = new Lexer(new String("main(x, x)")).lex();
+        Assertions.assertSame("main", tokens.get(0).getLiteral());
+        Assertions.assertSame(tokens.get(2).getLiteral(), tokens.get(4).getLiteral());
+    }
+
     @ParameterizedTest
     @MethodSource
     void testExamples(String test, String input, List<Token> expected) {
@@ -175,6 +276,112 @@ public class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testStreaming(String test, String input, int bufferSize) {
+        List<Token> expected = new Lexer(input).lex();
+        List<Token> actual = new ArrayList<>();
+        new Lexer(new StringReader(input), bufferSize).iterator().forEachRemaining(actual::add);
+        Assertions.assertEquals(expected, actual);
+    }
+
+    private static Stream<Arguments> testStreaming() {
+        return Stream.of(
+                Arguments.of("Single Buffer", "LET x = 5;", 64),
+                Arguments.of("Token Across Refill", "LET name = \"Hello, World!\";", 4),
+                Arguments.of("Decimal Across Refill", "1.5 + 12.", 2),
+                Arguments.of("Single Character Buffer", "print(\"a\\nb\", 'c', 1.0);", 1)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testMapped(String test, String input) {
+        ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(bytes).lex());
+    }
+
+    private static Stream<Arguments> testMapped() {
+        return Stream.of(
+                Arguments.of("Ascii", "LET x = 5.0;"),
+                Arguments.of("Multibyte String", "print(\"caf\u00e9\", 1);"),
+                Arguments.of("Supplementary Character", "\"\uD83D\uDE00\" + 'a'")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, Edit edit) {
+        String edited = edit.apply(input);
+        Assertions.assertEquals(new Lexer(edited).lex(), Lexer.relex(new Lexer(input).lex(), edited, edit));
+    }
+
+    private static Stream<Arguments> testRelex() {
+        return Stream.of(
+                Arguments.of("Extend Identifier", "LET x = 5;", new Edit(5, 0, "yz")),
+                Arguments.of("Remove Token", "LET x = 5 + 1;", new Edit(10, 4, "")),
+                Arguments.of("Complete Decimal", "x = 1. ;", new Edit(6, 0, "5")),
+                Arguments.of("Join Strings", "x = \"a\" + \"b\";", new Edit(6, 5, "")),
+                Arguments.of("Split String", "x = \"a + b\";", new Edit(6, 0, "\" + \"")),
+                Arguments.of("Join Operator", "x < = y", new Edit(3, 1, ""))
+        );
+    }
+
+    @Test
+    void testRelexSymbols() {
+        Lexer lexer = new Lexer("LET x = y; LET y = x;");
+        List<Token> tokens = lexer.lex();
+        SymbolTable symbols = lexer.getSymbols();
+        int size = symbols.size();
+        Edit edit = new Edit(8, 1, "x + z");
+        List<Token> relexed = Lexer.relex(tokens, edit.apply("LET x = y; LET y = x;"), edit, symbols);
+        Assertions.assertSame(tokens.get(1).getLiteral(), relexed.get(3).getLiteral());
+        Assertions.assertEquals(size + 1, symbols.size());
+        Assertions.assertEquals(size, symbols.getId(relexed.get(5).getLiteral()));
+    }
+
+    @Test
+    void testRelexRepeated() {
+        String source = "LET a = 1;\nLET b = \"b\";\nLET c = 3.0;\nLET d = a + b;\n";
+        Lexer lexer = new Lexer(source);
+        List<Token> tokens = lexer.lex();
+        for (int i = 0; i < 100; i++) {
+            Edit edit = i % 3 == 0 ? new Edit(source.indexOf('b'), 1, "bb" + i)
+                    : i % 3 == 1 ? new Edit(source.length() - 2, 0, " + " + i)
+                    : new Edit(0, 0, "LET x" + i + " = " + i + ";\n");
+            source = edit.apply(source);
+            tokens = Lexer.relex(tokens, source, edit, lexer.getSymbols());
+            Assertions.assertEquals(new Lexer(source).lex(), tokens);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(input).lexParallel(ForkJoinPool.commonPool(), 4));
+    }
+
+    private static Stream<Arguments> testParallel() {
+        return Stream.of(
+                Arguments.of("Single Line", "LET x = 5;"),
+                Arguments.of("Multiple Lines", "LET x = 5;\nLET y = \"str\";\n\nprint(x + 1.5);\r\n"),
+                Arguments.of("Decimal Before Newline", "LET x = 1.\n5;")
+        );
+    }
+
+    @Test
+    void testInputException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new StringReader("LET x = \"unterminated"), 4).lex());
+        Assertions.assertEquals(21, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(ByteBuffer.wrap("\"\u00e9\u00e9\\q\"".getBytes(StandardCharsets.UTF_8))).lex());
+        Assertions.assertEquals(4, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer("LET x = 1;\nLET y = \"abc\nLET z = 'a\n").lexParallel(ForkJoinPool.commonPool(), 4));
+        Assertions.assertEquals(23, exception.getIndex());
+    }
+
     @Test
     void testException() {
         // Strings
@@ -6,11 +6,18 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -421,6 +428,50 @@ final class ParserTests {
                                 new Ast.Expr.Access(Optional.empty(), "expr1"),
                                 new Ast.Expr.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Precedence",
+                        Arrays.asList(
+                                //a OR b + c * d == e
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.IDENTIFIER, "OR", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "+", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 9),
+                                new Token(Token.Type.OPERATOR, "*", 11),
+                                new Token(Token.Type.IDENTIFIER, "d", 13),
+                                new Token(Token.Type.OPERATOR, "==", 15),
+                                new Token(Token.Type.IDENTIFIER, "e", 18)
+                        ),
+                        new Ast.Expr.Binary("OR",
+                                new Ast.Expr.Access(Optional.empty(), "a"),
+                                new Ast.Expr.Binary("==",
+                                        new Ast.Expr.Binary("+",
+                                                new Ast.Expr.Access(Optional.empty(), "b"),
+                                                new Ast.Expr.Binary("*",
+                                                        new Ast.Expr.Access(Optional.empty(), "c"),
+                                                        new Ast.Expr.Access(Optional.empty(), "d")
+                                                )
+                                        ),
+                                        new Ast.Expr.Access(Optional.empty(), "e")
+                                )
+                        )
+                ),
+                Arguments.of("Left Associative",
+                        Arrays.asList(
+                                //a - b - c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8)
+                        ),
+                        new Ast.Expr.Binary("-",
+                                new Ast.Expr.Binary("-",
+                                        new Ast.Expr.Access(Optional.empty(), "a"),
+                                        new Ast.Expr.Access(Optional.empty(), "b")
+                                ),
+                                new Ast.Expr.Access(Optional.empty(), "c")
+                        )
                 )
         );
     }
@@ -577,6 +628,448 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testTokenBuffer(String test, String input) {
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(),
+                new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    private static Stream<Arguments> testTokenBuffer() {
+        return Stream.of(
+                Arguments.of("Field", "LET x: Integer = 1;"),
+                Arguments.of("Method", "DEF main(): Integer DO print(\"Hello\"); RETURN 0; END"),
+                Arguments.of("Expressions", "DEF f(a: Integer) DO LET b = a + 2 * (a - 1) <= 3.5 AND TRUE; obj.field = b; END")
+        );
+    }
+
+    @Test
+    void testTokenBufferException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("LET x: Integer = 1").lexBuffer()).parseSource());
+        Assertions.assertEquals(18, exception.getIndex());
+    }
+
+    @Test
+    void testFrontEnd() {
+        FrontEnd frontEnd = new FrontEnd();
+        List<String> sources = Arrays.asList(
+                "LET x: Integer = 1; DEF main(): Integer DO RETURN x + 1; END",
+                "DEF f(s: String) DO print(\"a\\tb\"); END",
+                "DEF main() DO x = 'c'; END"
+        );
+        for (String source : sources) {
+            Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), frontEnd.parseSource(source));
+            Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), FrontEnd.parse(source));
+        }
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> frontEnd.parseSource("LET x: Integer = 1"));
+        Assertions.assertEquals(18, exception.getIndex());
+        Assertions.assertEquals(new Parser(new Lexer(sources.get(0)).lex()).parseSource(), frontEnd.parseSource(sources.get(0)));
+    }
+
+    @Test
+    void testFrontEndSymbols() {
+        FrontEnd frontEnd = new FrontEnd();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= FrontEnd.MAX_SYMBOLS; i++) {
+            builder.append("LET v").append(i).append(": Integer;\n");
+        }
+        frontEnd.parseSource(builder.toString());
+        Assertions.assertTrue(frontEnd.getSymbols().size() > FrontEnd.MAX_SYMBOLS);
+        String source = "DEF main(): Integer DO RETURN 0; END";
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), frontEnd.parseSource(source));
+        Assertions.assertTrue(frontEnd.getSymbols().size() < 16);
+        SymbolTable shared = new SymbolTable();
+        new FrontEnd(shared).parseSource(builder.toString());
+        new FrontEnd(shared).parseSource(source);
+        Assertions.assertTrue(shared.size() > FrontEnd.MAX_SYMBOLS);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPipelined(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, FrontEnd.parsePipelined(new Lexer(input)));
+        Assertions.assertEquals(expected, FrontEnd.parsePipelined(new Lexer(new StringReader(input))));
+        TokenRing ring = new TokenRing(4);
+        Thread thread = new Thread(() -> new Lexer(input).lex(ring));
+        thread.start();
+        Assertions.assertEquals(expected, new Parser(ring).parseSource());
+    }
+
+    private static Stream<Arguments> testPipelined() {
+        StringBuilder methods = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            methods.append("DEF f").append(i).append("(x: Integer) DO IF x < 1 DO print(\"a\"); ELSE RETURN f(x - 1); END END\n");
+        }
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Field", "LET x: Integer = 1;"),
+                Arguments.of("Methods", methods.toString())
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testPipelined")
+    void testIterator(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).iterator()).parseSource());
+        Assertions.assertEquals(expected, new Parser(new Lexer(new StringReader(input)).iterator()).parseSource());
+    }
+
+    @Test
+    void testIteratorException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("LET x: Integer = 1").iterator()).parseSource());
+        Assertions.assertEquals(18, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("LET x: Integer = 1; DEF f() DO x = 'ab'; END").iterator()).parseSource());
+        Assertions.assertEquals(37, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource("testPipelined")
+    void testParallel(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSourceParallel());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceParallel(new ForkJoinPool(2)));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallelException(String test, String input) {
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSourceParallel());
+        Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    private static Stream<Arguments> testParallelException() {
+        return Stream.of(
+                Arguments.of("Invalid Field", "LET x: Integer = 1 DEF f() DO END"),
+                Arguments.of("First Error", "DEF f() DO x END DEF g() DO END DEF h() DO y END"),
+                Arguments.of("Missing End", "DEF f() DO IF x DO y; END DEF g() DO END"),
+                Arguments.of("Extra End", "DEF f() DO END END DEF g() DO END"),
+                Arguments.of("Missing Do", "DEF f() END DEF g() DO END"),
+                Arguments.of("Field After Method", "DEF f() DO END LET x: Integer = 1;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("testPipelined")
+    void testLazy(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source lazy = new Parser(new Lexer(input).lex()).parseSourceLazy(false);
+        for (Ast.Method method : lazy.getMethods()) {
+            Assertions.assertFalse(method.hasStatements());
+        }
+        Assertions.assertEquals(expected, lazy);
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceLazy(true));
+    }
+
+    @Test
+    void testLazyException() {
+        String input = "DEF f(): Integer DO RETURN 1 END DEF main(): Integer DO RETURN 0; END";
+        Ast.Source lazy = new Parser(new Lexer(input).lex()).parseSourceLazy(false);
+        Assertions.assertEquals(BigInteger.ZERO, new Interpreter(null).visit(lazy).getValue());
+        Assertions.assertFalse(lazy.getMethods().get(0).hasStatements());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> lazy.getMethods().get(0).getStatements());
+        Assertions.assertEquals(29, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSourceLazy(true));
+        Assertions.assertEquals(29, exception.getIndex());
+        exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("DEF f() DO IF x DO END").lex()).parseSourceLazy(false));
+        Assertions.assertEquals(22, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testLazyKeywords(String test, String input) {
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(input).lex()).parseSource();
+        }
+        catch (ParseException e) {
+            for (boolean validate : new boolean[] {true, false}) {
+                ParseException exception = Assertions.assertThrows(ParseException.class,
+                        () -> new Parser(new Lexer(input).lex()).parseSourceLazy(validate).hashCode());
+                Assertions.assertEquals(e.getMessage(), exception.getMessage());
+                Assertions.assertEquals(e.getIndex(), exception.getIndex());
+            }
+            return;
+        }
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSourceLazy(true));
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseSourceLazy(false));
+    }
+
+    private static Stream<Arguments> testLazyKeywords() {
+        return Stream.of(
+                Arguments.of("End Argument", "DEF main(): Integer DO print(END); RETURN 0; END"),
+                Arguments.of("Do Statement", "DEF f() DO DO; END DEF g() DO END"),
+                Arguments.of("Balanced Keywords", "DEF f() DO print(DO); END DEF g() DO print(END); END"),
+                Arguments.of("Def Argument", "DEF f() DO print(DEF); END DEF g() DO END"),
+                Arguments.of("End Condition", "DEF f() DO IF END DO print(END); END END"),
+                Arguments.of("Missing Parenthesis", "DEF f() DO print(END; END DEF g() DO END"),
+                Arguments.of("Missing Semicolon", "DEF f() DO print(END) END DEF g() DO END")
+        );
+    }
+
+    @Test
+    void testLazyHashCode() {
+        String input = "DEF f(): Integer DO RETURN 1; END DEF main(): Integer DO RETURN f(); END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source lazy = new Parser(new Lexer(input).lex()).parseSourceLazy(false);
+        Assertions.assertEquals(expected.hashCode(), lazy.hashCode());
+        for (Ast.Method method : lazy.getMethods()) {
+            Assertions.assertTrue(method.hasStatements());
+        }
+        Ast.Source invalid = new Parser(new Lexer(input.replace("1;", "1")).lex()).parseSourceLazy(false);
+        ParseException exception = Assertions.assertThrows(ParseException.class, invalid::hashCode);
+        Assertions.assertEquals(29, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReparse(String test, String input, Edit edit, int reused) {
+        List<Token> tokens = new Lexer(input).lex();
+        Ast.Source source = new Parser(tokens).parseSource();
+        String edited = edit.apply(input);
+        Ast.Source result = Parser.reparse(source, tokens, Lexer.relex(tokens, edited, edit), edit);
+        Assertions.assertEquals(new Parser(new Lexer(edited).lex()).parseSource(), result);
+        int count = 0;
+        for (Ast.Field field : result.getFields()) {
+            count += source.getFields().stream().filter(f -> f == field).count();
+        }
+        for (Ast.Method method : result.getMethods()) {
+            count += source.getMethods().stream().filter(m -> m == method).count();
+        }
+        Assertions.assertEquals(reused, count);
+    }
+
+    private static Stream<Arguments> testReparse() {
+        String input = "LET x: Integer = 1;\nDEF f(): Integer DO RETURN 1; END\nDEF g() DO IF x DO print(x); END END\nDEF h() DO END\n";
+        return Stream.of(
+                Arguments.of("Edit Field", input, new Edit(17, 1, "22"), 3),
+                Arguments.of("Edit Method", input, new Edit(47, 1, "2"), 3),
+                Arguments.of("Edit Nested", input, new Edit(79, 1, "y"), 3),
+                Arguments.of("Insert Method", input, new Edit(54, 0, "DEF i() DO END\n"), 4),
+                Arguments.of("Remove Method", input, new Edit(20, 34, ""), 3),
+                Arguments.of("Whitespace", input, new Edit(19, 0, "  "), 4),
+                Arguments.of("Rename Method", input, new Edit(24, 1, "ff"), 3)
+        );
+    }
+
+    @Test
+    void testReparseException() {
+        String input = "DEF f() DO END\nDEF g() DO END";
+        List<Token> tokens = new Lexer(input).lex();
+        Ast.Source source = new Parser(tokens).parseSource();
+        Edit edit = new Edit(15, 0, "LET x: Integer = 1;");
+        String edited = edit.apply(input);
+        ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(edited).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> Parser.reparse(source, tokens, Lexer.relex(tokens, edited, edit), edit));
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIterative(String test, String input) {
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setIterative(true);
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), parser.parseSource());
+    }
+
+    private static Stream<Arguments> testIterative() {
+        return Stream.of(
+                Arguments.of("Expressions", "DEF f() DO x = (a + b) * c.d(e, f(g)) - h.i AND 1 < 2; END"),
+                Arguments.of("Statements", "DEF f() DO IF x DO FOR i IN y DO WHILE z DO RETURN i; END END ELSE LET a = 1; END END")
+        );
+    }
+
+    @Test
+    void testIterativeDepth() {
+        int depth = 200000;
+        String groups = new String(new char[depth]).replace("\0", "(") + "x" + new String(new char[depth]).replace("\0", ")");
+        String calls = new String(new char[depth]).replace("\0", "f(") + "x" + new String(new char[depth]).replace("\0", ")");
+        String blocks = new String(new char[depth]).replace("\0", "WHILE x DO ") + new String(new char[depth]).replace("\0", "END ");
+        for (String input : Arrays.asList(groups, calls)) {
+            Parser parser = new Parser(new Lexer(input).lexBuffer());
+            parser.setIterative(true);
+            Ast.Expr expr = parser.parseExpression();
+            for (int i = 0; i < depth; i++) {
+                expr = expr instanceof Ast.Expr.Group
+                        ? ((Ast.Expr.Group) expr).getExpression()
+                        : ((Ast.Expr.Function) expr).getArguments().get(0);
+            }
+            Assertions.assertEquals(new Ast.Expr.Access(Optional.empty(), "x"), expr);
+        }
+        Parser parser = new Parser(new Lexer(blocks).lexBuffer());
+        parser.setIterative(true);
+        Ast.Stmt stmt = parser.parseStatement();
+        for (int i = 1; i < depth; i++) {
+            stmt = ((Ast.Stmt.While) stmt).getStatements().get(0);
+        }
+        Assertions.assertTrue(((Ast.Stmt.While) stmt).getStatements().isEmpty());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFlat(String test, String input) {
+        FlatAst flat = new Parser(new Lexer(input).lex()).parseSourceFlat();
+        Assertions.assertEquals(FlatAst.SOURCE, flat.getKind(flat.getRoot()));
+        Assertions.assertEquals(new Parser(new Lexer(input).lex()).parseSource(), flat.toAst());
+    }
+
+    private static Stream<Arguments> testFlat() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Fields", "LET x: Integer = 1; LET y: String = \"a\\n\"; LET z: Decimal;"),
+                Arguments.of("Method", "DEF f(a: Integer, b: Character): Integer DO LET c: Integer = a; LET d; RETURN c; END"),
+                Arguments.of("Statements", "DEF f() DO IF x DO FOR i IN y DO WHILE z DO x.y = i; END END ELSE f(); END END"),
+                Arguments.of("Expressions", "DEF f() DO x = (a + b) * c.d(e, f(g)) - h.i AND 1.0 < 2 OR 'c' == NIL != TRUE; END"),
+                Arguments.of("Else", "DEF f() DO IF x DO ELSE y(); z = 1; END IF a DO b(); END c(); END"),
+                Arguments.of("Fields And Methods", "LET a: Integer; LET b: Integer = f(); DEF f(): Integer DO RETURN a; END DEF g() DO END")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testFlatException(String test, String input) {
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lex()).parseSourceFlat());
+        Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+        Assertions.assertEquals(expected.getIndex(), exception.getIndex());
+    }
+
+    private static Stream<Arguments> testFlatException() {
+        return Stream.of(
+                Arguments.of("Field Type", "LET x = 1;"),
+                Arguments.of("Field Semicolon", "LET x: Integer = 1"),
+                Arguments.of("Method Name", "DEF (x: Integer) DO END"),
+                Arguments.of("Parameter Type", "DEF f(x) DO END"),
+                Arguments.of("Missing Do", "DEF f() END"),
+                Arguments.of("Missing End", "DEF f() DO x;"),
+                Arguments.of("Declaration", "DEF f() DO LET 1; END"),
+                Arguments.of("If Do", "DEF f() DO IF x END"),
+                Arguments.of("For In", "DEF f() DO FOR i y DO END END"),
+                Arguments.of("While Do", "DEF f() DO WHILE x; END"),
+                Arguments.of("Return Semicolon", "DEF f() DO RETURN x END"),
+                Arguments.of("Assignment Semicolon", "DEF f() DO x = 1 END"),
+                Arguments.of("Expression Semicolon", "DEF f() DO x END"),
+                Arguments.of("Group", "DEF f() DO x = (1 + 2; END"),
+                Arguments.of("Arguments", "DEF f() DO f(1, 2; END"),
+                Arguments.of("Access Name", "DEF f() DO x.1; END"),
+                Arguments.of("Operand", "DEF f() DO x = 1 + ; END"),
+                Arguments.of("Field After Method", "DEF f() DO END LET x: Integer;")
+        );
+    }
+
+    @Test
+    void testFactory() {
+        String input = "DEF main(): Integer DO LET x: Integer = 1 + (2 * 1); print(x + 1); print(1 + (2 * 1)); RETURN 0; END";
+        AstFactory factory = new AstFactory();
+        Parser parser = new Parser(new Lexer(input).lex());
+        parser.setFactory(factory);
+        Ast.Source shared = parser.parseSource();
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, shared);
+        Assertions.assertEquals(expected.hashCode(), shared.hashCode());
+        List<Ast.Stmt> statements = shared.getMethods().get(0).getStatements();
+        Ast.Expr declared = ((Ast.Stmt.Declaration) statements.get(0)).getValue().get();
+        Ast.Expr printed = ((Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(2)).getExpression()).getArguments().get(0);
+        Ast.Expr.Binary access = (Ast.Expr.Binary) ((Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(1)).getExpression()).getArguments().get(0);
+        Assertions.assertSame(declared, printed);
+        Assertions.assertSame(((Ast.Expr.Binary) declared).getLeft(), access.getRight());
+        Assertions.assertFalse(factory.isShared(access));
+        Assertions.assertEquals(6, factory.size());
+        new Analyzer(new Scope(null)).visit(expected);
+        new Analyzer(new Scope(null)).visit(shared);
+        Assertions.assertEquals(expected, shared);
+    }
+
+    @Test
+    void testHashCode() {
+        String input = "LET x: Integer = 1; DEF f(a: Integer) DO IF a < x DO f(a.b + 1); ELSE WHILE TRUE DO LET y = 'c'; END END FOR i IN a DO x = NIL; END RETURN (a); END";
+        Ast.Source source = new Parser(new Lexer(input).lex()).parseSource();
+        Ast.Source other = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(source.hashCode(), other.hashCode());
+        Map<Ast, String> map = new HashMap<>();
+        map.put(source, input);
+        Assertions.assertEquals(input, map.get(other));
+        Ast.Source changed = new Parser(new Lexer(input.replace("'c'", "'d'")).lex()).parseSource();
+        Assertions.assertNotEquals(source.hashCode(), changed.hashCode());
+        Assertions.assertNotEquals(new Ast.Stmt.Return(new Ast.Expr.Literal(null)).hashCode(),
+                new Ast.Stmt.Expression(new Ast.Expr.Literal(null)).hashCode());
+    }
+
+    @Test
+    void testFlatInterpreter() {
+        String input = "LET x: Integer = 1;\nDEF f(n: Integer): Integer DO IF n < 1 DO RETURN x; END RETURN n * f(n - 1); END\nDEF main(): Integer DO RETURN f(5); END";
+        FlatAst flat = new Parser(new Lexer(input).lex()).parseSourceFlat();
+        Ast.Source source = flat.toAst();
+        Assertions.assertFalse(source.getMethods().get(0).hasStatements());
+        Assertions.assertEquals(BigInteger.valueOf(120), new Interpreter(null).visit(source).getValue());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("DEF f() DO END LET x: Integer;").lex()).parseSourceFlat());
+        Assertions.assertEquals(15, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPipelinedException(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> FrontEnd.parsePipelined(new Lexer(input)));
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testPipelinedException() {
+        StringBuilder methods = new StringBuilder("LET x = 1;\n");
+        for (int i = 0; i < 200; i++) {
+            methods.append("DEF f").append(i).append("() DO END\n");
+        }
+        return Stream.of(
+                Arguments.of("Parser Error", "LET x: Integer = 1", 18),
+                Arguments.of("Lexer Error", "LET x: Integer = 'ab';", 19),
+                Arguments.of("Parser Error Before Lexer Error", methods + "\"a", 6)
+        );
+    }
+
+    @Test
+    void testPipelinedCancel() throws InterruptedException {
+        StringBuilder input = new StringBuilder("LET x = 1;\n");
+        for (int i = 0; i < 100000; i++) {
+            input.append("DEF f").append(i).append("() DO END\n");
+        }
+        AtomicLong read = new AtomicLong();
+        Reader reader = new StringReader(input.toString()) {
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                read.addAndGet(Math.max(count, 0));
+                return count;
+            }
+
+        };
+        Thread[] lexer = new Thread[1];
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> FrontEnd.parsePipelined(new Lexer(reader), runnable -> {
+                    lexer[0] = new Thread(runnable, "lexer");
+                    lexer[0].start();
+                }));
+        Assertions.assertEquals(6, exception.getIndex());
+        lexer[0].join(10000);
+        Assertions.assertFalse(lexer[0].isAlive());
+        Assertions.assertTrue(read.get() < input.length() / 10, "read " + read.get() + " characters");
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).